@@ -0,0 +1,206 @@
+package site.bsws.neb.alg;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Counts hits into a histogram buffer, one pixel index at a time.
+ * <p>
+ * Orbit points land all over the raster, so once a negative outgrows the caches nearly every
+ * increment is a cache and TLB miss. {@link #binned(DataBuffer)} counters instead append indices
+ * to small bins, each covering a contiguous block of the buffer, and apply a bin in one burst when
+ * it fills up, so that the increments of a burst fall within a few pages. Whether that beats the
+ * memory-level parallelism of plain increments depends on the machine; compare the two with
+ * {@code AccumulationBenchmark} at the raster size in question. Counts are only guaranteed to be
+ * in the buffer after {@link #flush()}.
+ * <p>
+ * Counts wrap round past the largest the buffer holds, unless the counter is
+ * {@link #saturating()}, when they stop there instead; that costs a comparison an increment, so it
+ * is left to counters whose weights can add up that far.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public abstract class Accumulator {
+
+    final DataBuffer buffer;
+    // The largest count kept, or 0 if counts wrap round.
+    final long max;
+
+    Accumulator(DataBuffer buffer, boolean saturating) {
+        this.buffer = buffer;
+        max = !saturating ? 0 : switch (buffer.getDataType()) {
+            case DataBuffer.TYPE_BYTE -> 0xff;
+            case DataBuffer.TYPE_USHORT -> 0xffff;
+            case DataBuffer.TYPE_SHORT -> Short.MAX_VALUE;
+            default -> Integer.MAX_VALUE;
+        };
+    }
+
+    /**
+     * @return a counter that increments the buffer at once.
+     */
+    public static Accumulator direct(DataBuffer buffer) {
+        return new Direct(buffer, false);
+    }
+
+    /**
+     * @return a counter that batches increments by block of the buffer.
+     */
+    public static Accumulator binned(DataBuffer buffer) {
+        return new Binned(buffer, false);
+    }
+
+    /**
+     * @return about how many bytes a {@linkplain #binned(DataBuffer) binned} counter on a buffer
+     * of {@code size} elements keeps besides it.
+     */
+    static long estimateBinnedBytes(int size) {
+        return Binned.estimateBytes(size);
+    }
+
+    /**
+     * @return a counter that increments the buffer atomically, for negatives sharing it across
+     * workers.
+     */
+    public static Accumulator atomic(DataBufferInt buffer) {
+        return new Atomic(buffer, false);
+    }
+
+    /**
+     * @return a counter of the same kind on the same buffer whose counts stop at the largest the
+     * buffer holds rather than wrapping round.
+     */
+    public abstract Accumulator saturating();
+
+    public boolean isSaturating() {
+        return max != 0;
+    }
+
+    public void add(int index) {
+        add(index, 1);
+    }
+
+    public abstract void add(int index, int weight);
+
+    public void flush() {
+    }
+
+    // The count after adding #weight to #count, stopped at #max if saturating.
+    final int sum(int count, int weight) {
+        return max == 0 ? count + weight : (int) Math.min((long) count + weight, max);
+    }
+
+    private static class Direct extends Accumulator {
+
+        Direct(DataBuffer buffer, boolean saturating) {
+            super(buffer, saturating);
+        }
+
+        @Override
+        public void add(int index) {
+            buffer.setElem(index, sum(buffer.getElem(index), 1));
+        }
+
+        @Override
+        public void add(int index, int weight) {
+            buffer.setElem(index, sum(buffer.getElem(index), weight));
+        }
+
+        @Override
+        public Accumulator saturating() {
+            return new Direct(buffer, true);
+        }
+    }
+
+    private static class Atomic extends Accumulator {
+
+        private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(int[].class);
+        private final int[] counts;
+
+        Atomic(DataBufferInt buffer, boolean saturating) {
+            super(buffer, saturating);
+            counts = buffer.getData();
+        }
+
+        @Override
+        public void add(int index, int weight) {
+            if (max == 0) {
+                COUNTS.getAndAdd(counts, index, weight);
+                return;
+            }
+            int count;
+            do {
+                count = (int) COUNTS.getVolatile(counts, index);
+            } while (count != max
+                    && !COUNTS.weakCompareAndSet(counts, index, count, sum(count, weight)));
+        }
+
+        @Override
+        public Accumulator saturating() {
+            return new Atomic((DataBufferInt) buffer, true);
+        }
+    }
+
+    private static class Binned extends Accumulator {
+
+        // Up to 256 bins of at least 4096 pixels, each holding 256 pending indices (256 KiB).
+        private static final int MAX_BIN_BITS = 8, MIN_BLOCK_BITS = 12, BIN_CAPACITY_BITS = 8;
+        private final int shift;
+        private final int[] pending, weights, fill;
+
+        Binned(DataBuffer buffer, boolean saturating) {
+            super(buffer, saturating);
+            shift = getShift(buffer.getSize());
+            int binCount = ((buffer.getSize() - 1) >>> shift) + 1;
+            pending = new int[binCount << BIN_CAPACITY_BITS];
+            weights = new int[pending.length];
+            fill = new int[binCount];
+        }
+
+        private static int getShift(int size) {
+            int sizeBits = 32 - Integer.numberOfLeadingZeros(Math.max(size - 1, 1));
+            return Math.max(sizeBits - MAX_BIN_BITS, MIN_BLOCK_BITS);
+        }
+
+        static long estimateBytes(int size) {
+            long binCount = ((Math.max(size, 1) - 1) >>> getShift(size)) + 1;
+            return (2 * (binCount << BIN_CAPACITY_BITS) + binCount) * Integer.BYTES;
+        }
+
+        @Override
+        public void add(int index, int weight) {
+            int bin = index >>> shift;
+            int count = fill[bin];
+            pending[(bin << BIN_CAPACITY_BITS) + count] = index;
+            weights[(bin << BIN_CAPACITY_BITS) + count] = weight;
+            if (++count == 1 << BIN_CAPACITY_BITS) {
+                apply(bin, count);
+                count = 0;
+            }
+            fill[bin] = count;
+        }
+
+        @Override
+        public Accumulator saturating() {
+            flush();
+            return new Binned(buffer, true);
+        }
+
+        @Override
+        public void flush() {
+            for (int bin = 0; bin < fill.length; bin++) {
+                apply(bin, fill[bin]);
+                fill[bin] = 0;
+            }
+        }
+
+        private void apply(int bin, int count) {
+            for (int i = bin << BIN_CAPACITY_BITS, end = i + count; i < end; i++) {
+                int index = pending[i];
+                buffer.setElem(index, sum(buffer.getElem(index), weights[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,1117 @@
+package site.bsws.neb.alg;
+
+import site.bsws.neb.Engine;
+import site.bsws.neb.alg.ParameterSchema.Parameter;
+import java.awt.Dimension;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author Arindam Biswas <arindam dot b at ftml dot net>
+ */
+public class BBrot implements Algorithm {
+
+    /**
+     * Compiled parameters; see {@link #SCHEMA} for names, units and bounds. {@code formula} is
+     * null for the built-in iteration, which squares z {@code degree - 1} times before adding c:
+     * degree d iterates z^(2^(d - 1)) + c, not z^d + c, so 2 is the Mandelbrot set and 3 is
+     * z^4 + c.
+     */
+    public record Parameters(double minX, double minY, double rangeX, double rangeY,
+            int iterationLimit, double escapeDistance, int degree, int sampleSize, String colour,
+            double orbitReuse, String accumulation, String precision, String splatting,
+            String symmetry, int escapeBands, int bandMin, int bandMax, String sampling,
+            String orbits, Formula formula) {
+    }
+
+    public static class Factory implements AlgorithmFactory<Parameters> {
+
+        @Override
+        public String getName() {
+            return "bbrot";
+        }
+
+        @Override
+        public ParameterSchema getSchema() {
+            return SCHEMA;
+        }
+
+        @Override
+        public Parameters compile(Map<String, String> parameters) throws InvalidParameterException {
+            ParameterSchema.Values values = SCHEMA.compile(parameters);
+            return new Parameters(values.getReal("min_x"), values.getReal("min_y"),
+                    values.getReal("range_x"), values.getReal("range_y"),
+                    values.getInteger("iteration_limit"), values.getReal("escape_distance"),
+                    values.getInteger("degree"), values.getInteger("sample_size"),
+                    values.getChoice("colour"), values.getReal("orbit_reuse"),
+                    values.getChoice("accumulation"), values.getChoice("precision"),
+                    values.getChoice("splatting"), values.getChoice("symmetry"),
+                    values.getInteger("escape_bands"), values.getInteger("band_min"),
+                    values.getInteger("band_max"), values.getChoice("sampling"),
+                    values.getChoice("orbits"), Formula.compileParameter(values, "formula"));
+        }
+
+        @Override
+        public Algorithm create(Parameters parameters) {
+            return new BBrot(parameters);
+        }
+    }
+
+    public static final ParameterSchema SCHEMA = new ParameterSchema(
+            Parameter.real("min_x", -2.0, -Double.MAX_VALUE, Double.MAX_VALUE, ""),
+            Parameter.real("min_y", -1.5, -Double.MAX_VALUE, Double.MAX_VALUE, ""),
+            Parameter.real("range_x", 3.0, Double.MIN_VALUE, Double.MAX_VALUE, ""),
+            Parameter.real("range_y", 3.0, Double.MIN_VALUE, Double.MAX_VALUE, ""),
+            Parameter.integer("iteration_limit", 500, 1, Integer.MAX_VALUE, "iterations"),
+            Parameter.real("escape_distance", 2.0, Double.MIN_VALUE, Double.MAX_VALUE, ""),
+            Parameter.integer("degree", 2, 2, 64, "(z^(2^(degree - 1)) + c)"),
+            Parameter.integer("sample_size", 10000000, 1, Integer.MAX_VALUE, "samples"),
+            Parameter.choice("colour", "blue", "red", "green", "blue", "bands").asDeveloping(),
+            Parameter.real("orbit_reuse", 0.0, 0.0, 0.9, "of samples"),
+            Parameter.choice("accumulation", "auto", "auto", "direct", "binned"),
+            Parameter.choice("precision", "double", "auto", "double", "single"),
+            Parameter.choice("splatting", "nearest", "nearest", "bilinear"),
+            Parameter.choice("symmetry", "auto", "auto", "none"),
+            Parameter.integer("escape_bands", 1, 1, 16, "bands"),
+            Parameter.integer("band_min", 1, 1, Integer.MAX_VALUE, "iterations").asDeveloping(),
+            Parameter.integer("band_max", Integer.MAX_VALUE, 1, Integer.MAX_VALUE, "iterations")
+                    .asDeveloping(),
+            Parameter.choice("sampling", "uniform", "uniform", "importance"),
+            Parameter.choice("orbits", "escaping", "escaping", "bounded"),
+            Parameter.text("formula", ""));
+    private static final int TASK_SAMPLE_SIZE = 100;
+    private static final int ORBIT_CHUNK = 1024; // Points a formula's kernel writes per call.
+    private static final int MAX_CACHED_SEEDS = 1 << 22; // 64 MiB of seeds per frame.
+    private final int iterationLimit, colourShift, sampleSize, degree;
+    private final double minX, minY, rangeX, rangeY, escapeDistance, orbitReuse;
+    private final String accumulation, precision;
+    // The view in single precision, for the float kernel.
+    private final float minXf, minYf, rangeXf, rangeYf, escapeDistanceSquaredf;
+    /*
+     With precision "auto", the float kernel is used while a pixel spans at least this many float
+     ulps at the view's largest coordinate, i.e. while rounding stays far below what a pixel can
+     show. The full default view qualifies up to a raster about 12000 pixels wide.
+     */
+    private static final int MIN_PIXEL_ULPS = 1024;
+    /*
+     With bilinear splatting, each orbit point is shared between the four pixels around it in
+     weights of 1/SPLAT_STEPS per axis, i.e. SPLAT_STEPS^2 counts in all; negatives are then int
+     wide, which leaves room for some 33 million points per pixel.
+     */
+    private static final int SPLAT_STEPS = 8;
+    private final boolean bilinear;
+    /*
+     Orbits of conjugate seeds are conjugate. When the view is centred on the real axis, only seeds
+     in its upper half are sampled, and process() mirrors the histogram across the middle row, so
+     each sample stands for two. Since the kernel iterates z^(2^(degree - 1)) + c rather than
+     z^degree + c (see Parameters), orbits also have rotational symmetry of odd order
+     2^(degree - 1) - 1; such rotations do not map pixels onto pixels and are not used.
+     */
+    private final boolean mirrorY;
+    /*
+     With "importance" sampling, seeds are drawn from an ImportanceMap of the seed rectangle,
+     IMPORTANCE_GRID cells a side, whose escape-time pass stops at IMPORTANCE_LIMIT iterations.
+     Seeds then carry weights (in ImportanceMap.WEIGHT_UNITs), so negatives are int wide.
+     */
+    private static final int IMPORTANCE_GRID = 256, IMPORTANCE_LIMIT = 2000;
+    private final boolean importance;
+    private volatile ImportanceMap importanceMap;
+    /*
+     With "bounded" orbits, the anti-Buddhabrot, the orbits that do not escape are traced instead
+     of those that do. They mostly fall into an attracting cycle, which Brent's algorithm finds
+     once a point comes within 1/CYCLE_RESOLUTION of a pixel of one a power of two iterations
+     before; the cycle is then traced once, each point counting for every time the orbit would have
+     come round it by the iteration limit, which spares the iterations in between. Counts then run
+     into the iteration limit, so negatives are int wide, and a pixel on a cycle can still reach
+     the top of an int in a few thousand hits, so its weights and counts saturate there rather
+     than wrap round.
+     */
+    private static final int CYCLE_RESOLUTION = 1024;
+    private final boolean bounded;
+    // A custom iteration, in place of the built-in one, traced in double precision.
+    private final Formula formula;
+    /*
+     With more than one escape band, each negative holds a histogram per band, one after the
+     other: orbits of length n (the iteration at which they escape) go to band
+     floor(log(n) * #bandScale), so bands are evenly spaced on a log scale up to the iteration
+     limit; bounded orbits go to the band of the period of their cycle, or of the iteration limit
+     if none was found. process() then only adds up the bands that meet [#bandMin, #bandMax], and
+     with the colour "bands" puts the lower, middle and upper third of them in blue, green and
+     red, so either can be changed by developing again rather than sampling again.
+     */
+    private final int escapeBands, bandMin, bandMax;
+    private final double bandScale;
+    private final boolean bandColours;
+    /*
+     Orbit reuse across the frames of a sequence: #cache collects this frame's productive seeds and
+     #replay holds those of the frame two before, whose sampling is then known to be complete. The
+     first #replayCount of them are replayed, each standing for #replayWeight uniform samples, and
+     the rest of the sample budget is drawn fresh.
+     */
+    private BBrot previous, source;
+    private boolean followed;
+    private OrbitCache cache, replay;
+    private int replayCount;
+    private final AtomicInteger replayCursor = new AtomicInteger();
+
+    public BBrot(Parameters parameters) {
+        minX = parameters.minX();
+        minY = parameters.minY();
+        rangeX = parameters.rangeX();
+        rangeY = parameters.rangeY();
+        iterationLimit = parameters.iterationLimit();
+        sampleSize = parameters.sampleSize();
+        degree = parameters.degree();
+        escapeDistance = parameters.escapeDistance();
+        orbitReuse = parameters.orbitReuse();
+        accumulation = parameters.accumulation();
+        precision = parameters.precision();
+        bilinear = parameters.splatting().equals("bilinear");
+        formula = parameters.formula();
+        // Replayed seeds would come from a frame that may not share the symmetry, and custom
+        // formulas, e.g. the Burning Ship, need not have it.
+        boolean symmetric = parameters.symmetry().equals("auto") && orbitReuse == 0
+                && formula == null;
+        mirrorY = symmetric && 2 * minY + rangeY == 0;
+        bounded = parameters.orbits().equals("bounded");
+        // As would replayed seeds, drawn from a weighted distribution of another frame; and the
+        // map favours seeds that escape late, not ones that stay.
+        importance = parameters.sampling().equals("importance") && orbitReuse == 0 && !bounded;
+        escapeBands = parameters.escapeBands();
+        bandMin = parameters.bandMin();
+        bandMax = parameters.bandMax();
+        bandScale = escapeBands / Math.log(iterationLimit + 1.0);
+        bandColours = parameters.colour().equals("bands");
+        minXf = (float) minX;
+        minYf = (float) minY;
+        rangeXf = (float) rangeX;
+        rangeYf = (float) rangeY;
+        escapeDistanceSquaredf = (float) (escapeDistance * escapeDistance);
+        switch (parameters.colour()) {
+            case "red":
+                colourShift = 16;
+                break;
+            case "green":
+                colourShift = 8;
+                break;
+            default:
+                colourShift = 0;
+        }
+    }
+
+    @Override
+    public int getNegativeMultiplier(int processorCount) {
+        return 1;
+    }
+
+    @Override
+    public void follow(Algorithm previous) {
+        if (orbitReuse > 0 && previous instanceof BBrot) {
+            this.previous = (BBrot) previous;
+            this.previous.followed = true;
+            source = this.previous.previous;
+        }
+    }
+
+    @Override
+    public void run(Engine.Negative negative) { // TODO: Use "advanced probabilistic techniques".
+        Accumulator accumulator = getAccumulator(negative);
+        boolean single = isSinglePrecision(negative.size);
+        int batch = negative.tuning == null ? TASK_SAMPLE_SIZE
+                : TASK_SAMPLE_SIZE * negative.tuning.batchScale();
+        // Replayed seeds come first, and the batch is made up with fresh ones once they run out.
+        if (replay != null && replayCursor.get() < replayCount) {
+            int start = replayCursor.getAndAdd(batch);
+            for (int i = start; i < Math.min(start + batch, replayCount); i++) {
+                trace(negative, accumulator, single, replay.getR(i), replay.getI(i), 1);
+            }
+            batch -= Math.max(Math.min(replayCount - start, batch), 0);
+        }
+        // With mirroring, seeds are drawn from the upper half of the view only.
+        double seedMinY = mirrorY ? 0 : minY, seedRangeY = mirrorY ? rangeY / 2 : rangeY;
+        if (importance) {
+            ImportanceMap map = getImportanceMap(seedMinY, seedRangeY);
+            double[] seed = (double[]) negative.data.get("seed");
+            if (seed == null) {
+                seed = new double[2];
+                negative.data.put("seed", seed);
+            }
+            for (int i = 1; i <= batch; i++) {
+                int weight = map.sample(ThreadLocalRandom.current(), seed);
+                if (weight > 0) {
+                    trace(negative, accumulator, single, seed[0], seed[1], weight);
+                }
+            }
+            accumulator.flush();
+            return;
+        }
+        for (int i = 1; i <= batch; i++) {
+            // use ThreadLocalRandom for improved performance
+            trace(negative, accumulator, single,
+                    minX + ThreadLocalRandom.current().nextDouble(rangeX),
+                    seedMinY + ThreadLocalRandom.current().nextDouble(seedRangeY), 1);
+        }
+        accumulator.flush();
+    }
+
+    /**
+     * @return the order of the symmetry exploited, i.e. how many orbits each sample stands for: 2
+     * when mirroring across the real axis, 1 otherwise.
+     */
+    public int getSymmetryOrder() {
+        return mirrorY ? 2 : 1;
+    }
+
+    /**
+     * @return true if orbits are traced in single precision at this raster size, per the
+     * {@code precision} parameter; never with a custom formula, or for bounded orbits, whose
+     * cycles are told apart at a fraction of a pixel.
+     */
+    public boolean isSinglePrecision(Dimension rasterSize) {
+        if (formula != null || bounded) {
+            return false;
+        }
+        switch (precision) {
+            case "single":
+                return true;
+            case "double":
+                return false;
+            default:
+                double extent = Math.max(Math.max(Math.abs(minX), Math.abs(minX + rangeX)),
+                        Math.max(Math.abs(minY), Math.abs(minY + rangeY)));
+                double pixelSize = Math.min(rangeX / rasterSize.width,
+                        rangeY / rasterSize.height);
+                return pixelSize >= MIN_PIXEL_ULPS * Math.ulp((float) extent);
+        }
+    }
+
+    // Built by the first task to need it, while the others wait.
+    private ImportanceMap getImportanceMap(double seedMinY, double seedRangeY) {
+        ImportanceMap map = importanceMap;
+        if (map == null) {
+            synchronized (this) {
+                map = importanceMap;
+                if (map == null) {
+                    int limit = Math.min(iterationLimit, IMPORTANCE_LIMIT);
+                    double[] z = new double[2], points = new double[2 * limit];
+                    importanceMap = map = new ImportanceMap(minX, seedMinY, rangeX, seedRangeY,
+                            IMPORTANCE_GRID, limit, formula == null
+                                    ? (cR, cI) -> getEscapeTime(cR, cI, limit) : (cR, cI) -> {
+                                        z[0] = cR;
+                                        z[1] = cI;
+                                        int steps = formula.orbit(z, cR, cI, points, limit,
+                                                escapeDistance * escapeDistance);
+                                        return steps < 0 ? -steps - 1 : limit;
+                                    });
+                }
+            }
+        }
+        return map;
+    }
+
+    // The number of iterations after which the orbit of c escapes, or #limit if it does not.
+    private int getEscapeTime(double cR, double cI, int limit) {
+        double zR = cR, zI = cI, p;
+        int j;
+        for (j = 0; j < limit; j++) {
+            for (int k = 1; k < degree; k++) {
+                p = zR;
+                zR = zR * zR - zI * zI;
+                zI = 2 * p * zI;
+            }
+            zR += cR;
+            zI += cI;
+            if (zR * zR + zI * zI > escapeDistance * escapeDistance) {
+                break;
+            }
+        }
+        return j;
+    }
+
+    /*
+     The accumulator, and its bins, stay with the negative from one task to the next. The mode is
+     the tuning's if the render is tuned; "auto" is "direct" otherwise. Negatives sharing a buffer
+     always count atomically.
+     */
+    private Accumulator getAccumulator(Engine.Negative negative) {
+        if (negative.data.containsKey("shared")) {
+            Accumulator accumulator = (Accumulator) negative.data.get("atomic_accumulator");
+            if (accumulator == null || accumulator.isSaturating() != bounded) {
+                accumulator = Accumulator.atomic((DataBufferInt) negative.buffer);
+                accumulator = bounded ? accumulator.saturating() : accumulator;
+                negative.data.put("atomic_accumulator", accumulator);
+            }
+            return accumulator;
+        }
+        boolean binned = negative.tuning != null ? negative.tuning.accumulation().equals("binned")
+                : accumulation.equals("binned");
+        String key = binned ? "binned_accumulator" : "accumulator";
+        Accumulator accumulator = (Accumulator) negative.data.get(key);
+        if (accumulator == null || accumulator.buffer != negative.buffer
+                || accumulator.isSaturating() != bounded) {
+            accumulator = binned ? Accumulator.binned(negative.buffer)
+                    : Accumulator.direct(negative.buffer);
+            accumulator = bounded ? accumulator.saturating() : accumulator;
+            negative.data.put(key, accumulator);
+        }
+        return accumulator;
+    }
+
+    // Adds the orbit of c to the histogram, each point counting #weight times.
+    private void trace(Engine.Negative negative, Accumulator accumulator, boolean single,
+            double cR, double cI, int weight) {
+        boolean productive = bounded ? formula != null
+                ? traceBoundedFormula(negative, accumulator, cR, cI, weight)
+                : traceBounded(negative, accumulator, cR, cI, weight)
+                : formula != null ? traceFormula(negative, accumulator, cR, cI, weight)
+                : single ? traceSingle(negative, accumulator, (float) cR, (float) cI, weight)
+                : traceDouble(negative, accumulator, cR, cI, weight);
+        if (productive && cache != null) {
+            cache.record(cR, cI);
+        }
+    }
+
+    // Returns whether the orbit of c escapes and leaves at least one point in the view.
+    private boolean traceDouble(Engine.Negative negative, Accumulator accumulator, double cR,
+            double cI, int weight) {
+        int j, bufferX, bufferY; // location of (zR, zI) in histogram
+        double zR = cR, zI = cI, p;
+        boolean productive = false;
+        // check if the sequence generated by (cR, cI) escapes
+        for (j = 0; j < iterationLimit; j++) {
+            for (int k = 1; k < degree; k++) {
+                p = zR;
+                zR = zR * zR - zI * zI;
+                zI = 2 * p * zI;
+            }
+            zR += cR;
+            zI += cI;
+            if (zR * zR + zI * zI > escapeDistance * escapeDistance) {
+                break;
+            }
+        }
+        if (j == iterationLimit) { // does the sequence escape?
+            return false;
+        }
+        int offset = getBand(j + 1) * negative.size.width * negative.size.height;
+        zR = cR;
+        zI = cI;
+        for (j = 0; j < iterationLimit; j++) {
+            // Is the point within the rendering region?
+            if (zR >= minX && zR - minX <= rangeX && zI >= minY && zI - minY <= rangeY) {
+                if (bilinear) {
+                    splat(negative, accumulator, offset,
+                            ((zR - minX) / rangeX) * negative.size.width,
+                            ((zI - minY) / rangeY) * negative.size.height, weight);
+                } else {
+                    // A point on the far edge of the view falls one pixel out.
+                    bufferX = Math.min((int) (((zR - minX) / rangeX) * negative.size.width),
+                            negative.size.width - 1);
+                    bufferY = Math.min((int) (((zI - minY) / rangeY) * negative.size.height),
+                            negative.size.height - 1);
+                    accumulator.add(offset + bufferY * negative.size.width + bufferX, weight);
+                }
+                productive = true;
+            }
+            for (int k = 1; k < degree; k++) {
+                p = zR;
+                zR = zR * zR - zI * zI;
+                zI = 2 * p * zI;
+            }
+            zR += cR;
+            zI += cI;
+        }
+        return productive;
+    }
+
+    /*
+     As traceDouble(), for a custom formula. Its kernel escapes and records the orbit in one go,
+     ORBIT_CHUNK points at a time; only orbits longer than that are iterated again to be recorded.
+     */
+    private boolean traceFormula(Engine.Negative negative, Accumulator accumulator, double cR,
+            double cI, int weight) {
+        double[] z = (double[]) negative.data.get("z"), points = (double[]) negative.data
+                .get("orbit");
+        if (points == null) {
+            z = new double[2];
+            points = new double[2 * ORBIT_CHUNK];
+            negative.data.put("z", z);
+            negative.data.put("orbit", points);
+        }
+        double escapeSquared = escapeDistance * escapeDistance;
+        z[0] = cR;
+        z[1] = cI;
+        int length = 0, steps = 0;
+        while (length < iterationLimit && steps >= 0) {
+            steps = formula.orbit(z, cR, cI, points, Math.min(ORBIT_CHUNK, iterationLimit - length),
+                    escapeSquared);
+            length += Math.abs(steps);
+        }
+        if (steps >= 0) {
+            return false;
+        }
+        int offset = getBand(length) * negative.size.width * negative.size.height;
+        boolean productive = record(negative, accumulator, offset, cR, cI, weight);
+        if (length <= ORBIT_CHUNK) {
+            for (int k = 0; k < length; k++) {
+                productive |= record(negative, accumulator, offset, points[2 * k],
+                        points[2 * k + 1], weight);
+            }
+            return productive;
+        }
+        z[0] = cR;
+        z[1] = cI;
+        for (int recorded = 0; recorded < length; ) {
+            steps = Math.abs(formula.orbit(z, cR, cI, points,
+                    Math.min(ORBIT_CHUNK, length - recorded), escapeSquared));
+            for (int k = 0; k < steps; k++) {
+                productive |= record(negative, accumulator, offset, points[2 * k],
+                        points[2 * k + 1], weight);
+            }
+            recorded += steps;
+        }
+        return productive;
+    }
+
+    /*
+     As traceDouble(), for an orbit that does not escape. A first pass looks for its cycle: each
+     point is compared with the one saved at the last power of two iterations, until a point comes
+     back within #getCycleTolerance() of it, which gives the period. A second pass then traces the
+     orbit up to there, counting the points of the cycle as getMultiplicity() has it.
+     */
+    private boolean traceBounded(Engine.Negative negative, Accumulator accumulator, double cR,
+            double cI, int weight) {
+        double tolerance = getCycleTolerance(negative.size);
+        double zR = cR, zI = cI, savedR = cR, savedI = cI, p;
+        int length = iterationLimit, period = 0; // Of the orbit traced, and of its cycle.
+        for (int j = 0, power = 1, lambda = 0; j < iterationLimit; j++) {
+            for (int k = 1; k < degree; k++) {
+                p = zR;
+                zR = zR * zR - zI * zI;
+                zI = 2 * p * zI;
+            }
+            zR += cR;
+            zI += cI;
+            if (zR * zR + zI * zI > escapeDistance * escapeDistance) {
+                return false;
+            }
+            lambda++;
+            if ((zR - savedR) * (zR - savedR) + (zI - savedI) * (zI - savedI) <= tolerance) {
+                length = j + 1;
+                period = lambda;
+                break;
+            }
+            if (lambda == power) {
+                savedR = zR;
+                savedI = zI;
+                power <<= 1;
+                lambda = 0;
+            }
+        }
+        int offset = getBand(period > 0 ? period : iterationLimit) * negative.size.width
+                * negative.size.height;
+        boolean productive = false;
+        zR = cR;
+        zI = cI;
+        for (int j = 0; j < length; j++) {
+            productive |= record(negative, accumulator, offset, zR, zI,
+                    times(weight, getMultiplicity(j, length, period)));
+            for (int k = 1; k < degree; k++) {
+                p = zR;
+                zR = zR * zR - zI * zI;
+                zI = 2 * p * zI;
+            }
+            zR += cR;
+            zI += cI;
+        }
+        return productive;
+    }
+
+    // As traceBounded(), for a custom formula, whose kernel gives the orbit a chunk at a time.
+    private boolean traceBoundedFormula(Engine.Negative negative, Accumulator accumulator,
+            double cR, double cI, int weight) {
+        double[] z = (double[]) negative.data.get("z"), points = (double[]) negative.data
+                .get("orbit");
+        if (points == null) {
+            z = new double[2];
+            points = new double[2 * ORBIT_CHUNK];
+            negative.data.put("z", z);
+            negative.data.put("orbit", points);
+        }
+        double escapeSquared = escapeDistance * escapeDistance;
+        double tolerance = getCycleTolerance(negative.size);
+        double savedR = cR, savedI = cI;
+        int length = iterationLimit, period = 0;
+        z[0] = cR;
+        z[1] = cI;
+        search:
+        for (int done = 0, power = 1, lambda = 0; done < iterationLimit; ) {
+            int steps = formula.orbit(z, cR, cI, points,
+                    Math.min(ORBIT_CHUNK, iterationLimit - done), escapeSquared);
+            if (steps < 0) {
+                return false;
+            }
+            for (int k = 0; k < steps; k++) { // Point #k is the orbit's #(done + k + 1).
+                double zR = points[2 * k], zI = points[2 * k + 1];
+                lambda++;
+                if ((zR - savedR) * (zR - savedR) + (zI - savedI) * (zI - savedI)
+                        <= tolerance) {
+                    length = done + k + 1;
+                    period = lambda;
+                    break search;
+                }
+                if (lambda == power) {
+                    savedR = zR;
+                    savedI = zI;
+                    power <<= 1;
+                    lambda = 0;
+                }
+            }
+            done += steps;
+        }
+        int offset = getBand(period > 0 ? period : iterationLimit) * negative.size.width
+                * negative.size.height;
+        boolean productive = record(negative, accumulator, offset, cR, cI,
+                times(weight, getMultiplicity(0, length, period)));
+        z[0] = cR;
+        z[1] = cI;
+        for (int recorded = 1; recorded < length; ) {
+            int steps = Math.abs(formula.orbit(z, cR, cI, points,
+                    Math.min(ORBIT_CHUNK, length - recorded), escapeSquared));
+            for (int k = 0; k < steps; k++) {
+                productive |= record(negative, accumulator, offset, points[2 * k],
+                        points[2 * k + 1],
+                        times(weight, getMultiplicity(recorded + k, length, period)));
+            }
+            recorded += steps;
+        }
+        return productive;
+    }
+
+    // The square of the distance within which two points of an orbit are taken to be one.
+    private double getCycleTolerance(Dimension rasterSize) {
+        double tolerance = Math.min(rangeX / rasterSize.width, rangeY / rasterSize.height)
+                / CYCLE_RESOLUTION;
+        return tolerance * tolerance;
+    }
+
+    /*
+     How many times point #j of an orbit traced for #length points, the last #period of them a
+     cycle (if #period is not 0), would have come up in #iterationLimit points: once, and for a
+     point of the cycle, as many times again as the orbit would have come round to it.
+     */
+    private int getMultiplicity(int j, int length, int period) {
+        int start = length - period;
+        if (period == 0 || j < start) {
+            return 1;
+        }
+        int remaining = iterationLimit - length;
+        return 1 + remaining / period + (j - start < remaining % period ? 1 : 0);
+    }
+
+    // #weight times #multiplicity, saturated at the top of an int.
+    private static int times(int weight, int multiplicity) {
+        return (int) Math.min((long) weight * multiplicity, Integer.MAX_VALUE);
+    }
+
+    // Adds the point z to the histogram if it is in the view; returns whether it was.
+    private boolean record(Engine.Negative negative, Accumulator accumulator, int offset,
+            double zR, double zI, int weight) {
+        if (!(zR >= minX && zR - minX <= rangeX && zI >= minY && zI - minY <= rangeY)) {
+            return false;
+        }
+        if (bilinear) {
+            splat(negative, accumulator, offset, ((zR - minX) / rangeX) * negative.size.width,
+                    ((zI - minY) / rangeY) * negative.size.height, weight);
+        } else {
+            int bufferX = Math.min((int) (((zR - minX) / rangeX) * negative.size.width),
+                    negative.size.width - 1);
+            int bufferY = Math.min((int) (((zI - minY) / rangeY) * negative.size.height),
+                    negative.size.height - 1);
+            accumulator.add(offset + bufferY * negative.size.width + bufferX, weight);
+        }
+        return true;
+    }
+
+    // As traceDouble(), in single precision.
+    private boolean traceSingle(Engine.Negative negative, Accumulator accumulator, float cR,
+            float cI, int weight) {
+        int j, bufferX, bufferY;
+        float zR = cR, zI = cI, p;
+        boolean productive = false;
+        for (j = 0; j < iterationLimit; j++) {
+            for (int k = 1; k < degree; k++) {
+                p = zR;
+                zR = zR * zR - zI * zI;
+                zI = 2 * p * zI;
+            }
+            zR += cR;
+            zI += cI;
+            if (zR * zR + zI * zI > escapeDistanceSquaredf) {
+                break;
+            }
+        }
+        if (j == iterationLimit) {
+            return false;
+        }
+        int offset = getBand(j + 1) * negative.size.width * negative.size.height;
+        zR = cR;
+        zI = cI;
+        for (j = 0; j < iterationLimit; j++) {
+            if (zR >= minXf && zR - minXf <= rangeXf && zI >= minYf && zI - minYf <= rangeYf) {
+                if (bilinear) {
+                    splat(negative, accumulator, offset,
+                            ((zR - minXf) / rangeXf) * negative.size.width,
+                            ((zI - minYf) / rangeYf) * negative.size.height, weight);
+                } else {
+                    // Rounding can land a point on the far edge, one pixel out.
+                    bufferX = Math.min((int) (((zR - minXf) / rangeXf) * negative.size.width),
+                            negative.size.width - 1);
+                    bufferY = Math.min((int) (((zI - minYf) / rangeYf) * negative.size.height),
+                            negative.size.height - 1);
+                    accumulator.add(offset + bufferY * negative.size.width + bufferX, weight);
+                }
+                productive = true;
+            }
+            for (int k = 1; k < degree; k++) {
+                p = zR;
+                zR = zR * zR - zI * zI;
+                zI = 2 * p * zI;
+            }
+            zR += cR;
+            zI += cI;
+        }
+        return productive;
+    }
+
+    /*
+     Adds a point at (x, y), in pixels from the view's corner, to the pixels whose centres surround
+     it, weighted by proximity and scaled by #scale; weight falling outside the raster is dropped.
+     */
+    private static void splat(Engine.Negative negative, Accumulator accumulator, int offset,
+            double x, double y, int scale) {
+        x -= 0.5;
+        y -= 0.5;
+        int left = (int) Math.floor(x), top = (int) Math.floor(y);
+        int stepsX = (int) ((x - left) * SPLAT_STEPS + 0.5);
+        int stepsY = (int) ((y - top) * SPLAT_STEPS + 0.5);
+        for (int row = Math.max(top, 0); row <= Math.min(top + 1, negative.size.height - 1);
+                row++) {
+            int weightY = row == top ? SPLAT_STEPS - stepsY : stepsY;
+            for (int column = Math.max(left, 0);
+                    column <= Math.min(left + 1, negative.size.width - 1); column++) {
+                int weight = weightY * (column == left ? SPLAT_STEPS - stepsX : stepsX);
+                if (weight > 0) {
+                    accumulator.add(offset + row * negative.size.width + column,
+                            times(weight, scale));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void process(Engine.Negative[] negatives, Engine.Positive positive) {
+        if (bandColours) {
+            int[][] blue = develop(negatives, 0), green = develop(negatives, 1),
+                    red = develop(negatives, 2);
+            double blueMax = getMax(blue), greenMax = getMax(green), redMax = getMax(red);
+            for (int i = 0; i < blue.length; i++) {
+                for (int j = 0; j < blue[0].length; j++) {
+                    int posIndex = positive.getWidth() * (positive.getHeight() - j - 1) + i;
+                    positive.buffer[posIndex] = 0xff000000 | (int) (255 * red[i][j] / redMax) << 16
+                            | (int) (255 * green[i][j] / greenMax) << 8
+                            | (int) (255 * blue[i][j] / blueMax);
+                }
+            }
+            Histograms.give(blue, green, red);
+            return;
+        }
+        int[][] histogram = develop(negatives, -1);
+        int max = getMax(histogram); // Holds the maximum of all values in the "histogram".
+        for (int i = 0; i < histogram.length; i++) {
+            for (int j = 0; j < histogram[0].length; j++) {
+                int posIndex = positive.getWidth() * (positive.getHeight() - j - 1) + i;
+                positive.buffer[posIndex] = 0xff000000 | (int) (255 * histogram[i][j]
+                        / (double) max) << colourShift;
+            }
+        }
+        Histograms.give(histogram);
+    }
+
+    @Override
+    public boolean isTileable() {
+        return true;
+    }
+
+    /*
+     As process(), a band of rows at a time: a first pass over the negatives finds the maxima
+     without a histogram, and a second develops each band of the positive from them, a row at a
+     time.
+     */
+    @Override
+    public void process(Engine.Negative[] negatives, int tileHeight,
+            Engine.TileHandler handler) {
+        Dimension size = negatives[0].size;
+        // Red, green and blue in bands, otherwise the colour of all of them.
+        int[] channels = bandColours ? new int[]{2, 1, 0} : new int[]{-1};
+        int[] shifts = bandColours ? new int[]{16, 8, 0} : new int[]{colourShift};
+        int[][] rows = new int[channels.length][size.width];
+        double[] max = getMaxima(negatives, channels, rows);
+        Engine.Positive tile = null;
+        for (int y = 0; y < size.height; y += tileHeight) {
+            int height = Math.min(tileHeight, size.height - y);
+            if (tile == null || tile.getHeight() != height) {
+                tile = new Engine.Positive(new Dimension(size.width, height));
+            }
+            for (int r = 0; r < height; r++) {
+                int j = size.height - 1 - (y + r); // Rows of the negatives run upwards.
+                for (int c = 0; c < channels.length; c++) {
+                    developRow(negatives, channels[c], j, rows[c]);
+                }
+                for (int i = 0; i < size.width; i++) {
+                    int pixel = 0xff000000;
+                    for (int c = 0; c < channels.length; c++) {
+                        pixel |= (int) (255 * rows[c][i] / max[c]) << shifts[c];
+                    }
+                    tile.buffer[r * size.width + i] = pixel;
+                }
+            }
+            handler.tileRendered(y, tile);
+        }
+    }
+
+    /*
+     As process(negatives, tileHeight, handler), but each count over its channel's maximum, with
+     the channels where the positive has them.
+     */
+    @Override
+    public void develop(Engine.Negative[] negatives, int tileHeight, Engine.BandHandler handler) {
+        Dimension size = negatives[0].size;
+        int[] channels = bandColours ? new int[]{2, 1, 0} : new int[]{-1};
+        int[] samples = bandColours ? new int[]{0, 1, 2} : new int[]{2 - colourShift / 8};
+        int[][] rows = new int[channels.length][size.width];
+        double[] max = getMaxima(negatives, channels, rows);
+        for (int y = 0; y < size.height; y += tileHeight) {
+            Engine.Band band = new Engine.Band(y, size.width,
+                    Math.min(tileHeight, size.height - y));
+            for (int r = 0; r < band.height; r++) {
+                int j = size.height - 1 - (y + r);
+                for (int c = 0; c < channels.length; c++) {
+                    if (max[c] == 0) {
+                        continue;
+                    }
+                    developRow(negatives, channels[c], j, rows[c]);
+                    int offset = 3 * r * size.width + samples[c];
+                    for (int i = 0; i < size.width; i++) {
+                        band.samples[offset + 3 * i] = (float) (rows[c][i] / max[c]);
+                    }
+                }
+            }
+            handler.bandDeveloped(band);
+        }
+    }
+
+    // The highest count of each of the channels, a row at a time through #rows.
+    private double[] getMaxima(Engine.Negative[] negatives, int[] channels, int[][] rows) {
+        double[] max = new double[channels.length];
+        for (int c = 0; c < channels.length; c++) {
+            for (int j = 0; j < negatives[0].size.height; j++) {
+                developRow(negatives, channels[c], j, rows[c]);
+                for (int count : rows[c]) {
+                    max[c] = Math.max(max[c], count);
+                }
+            }
+        }
+        return max;
+    }
+
+    // Whether develop() takes #band into account for #channel.
+    private boolean isDeveloped(int band, int channel) {
+        int nextBandStart = band + 1 < escapeBands ? getBandStart(band + 1) : iterationLimit + 1;
+        return getBandStart(band) <= bandMax && nextBandStart > bandMin
+                && (channel < 0 || band * 3 / escapeBands == channel);
+    }
+
+    // Row #j of what develop() gives, into #row.
+    private void developRow(Engine.Negative[] negatives, int channel, int j, int[] row) {
+        Dimension size = negatives[0].size;
+        Arrays.fill(row, 0);
+        for (int band = 0; band < escapeBands; band++) {
+            if (!isDeveloped(band, channel)) {
+                continue;
+            }
+            int start = band * size.width * size.height + j * size.width;
+            // The middle row of an odd height counts twice, as in develop().
+            int mirrored = band * size.width * size.height + (size.height - 1 - j) * size.width;
+            for (Engine.Negative negative : negatives) {
+                for (int i = 0; i < size.width; i++) {
+                    row[i] += negative.buffer.getElem(start + i);
+                }
+                if (mirrorY) {
+                    for (int i = 0; i < size.width; i++) {
+                        row[i] += negative.buffer.getElem(mirrored + i);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     Adds up the negatives' bands that meet the band window, and of those, with a channel of 0, 1
+     or 2, only the ones in that third, into a histogram indexed by column, then row, to be given
+     back to Histograms once done with.
+     */
+    private int[][] develop(Engine.Negative[] negatives, int channel) {
+        Dimension size = negatives[0].size;
+        int[][] histogram = Histograms.take(size);
+        for (int band = 0; band < escapeBands; band++) {
+            if (!isDeveloped(band, channel)) {
+                continue;
+            }
+            int offset = band * size.width * size.height;
+            for (int i = 0; i < histogram.length; i++) {
+                for (int j = 0; j < histogram[0].length; j++) {
+                    long count = histogram[i][j];
+                    for (Engine.Negative negative : negatives) {
+                        count += negative.buffer.getElem(offset + j * size.width + i);
+                    }
+                    histogram[i][j] = (int) Math.min(count, Integer.MAX_VALUE);
+                }
+            }
+        }
+        if (mirrorY) {
+            int height = histogram[0].length;
+            for (int[] column : histogram) {
+                for (int j = 0; j < (height + 1) / 2; j++) {
+                    column[j] = column[height - 1 - j] = (int) Math.min(
+                            (long) column[j] + column[height - 1 - j], Integer.MAX_VALUE);
+                }
+            }
+        }
+        return histogram;
+    }
+
+    /*
+     Counts are Poisson: a pixel of n counts has a standard error of about sqrt(n * unit), where
+     unit is the mean square of what a hit adds over its mean. With bilinear splatting, a hit adds
+     (SPLAT_STEPS / 2)^2 to a pixel on average and (SPLAT_STEPS^2 / 3)^2 on average squared, a
+     ratio of (2 * SPLAT_STEPS / 3)^2; weighted seeds add at least ImportanceMap.WEIGHT_UNIT.
+     The points of the cycles of bounded orbits add up to the iteration limit each, which is taken
+     as the unit, erring on the side of noise. process() maps the largest count to full scale, so
+     the root mean square over pixels is sqrt(mean(n) * unit) / max(n). With the colour "bands",
+     each channel is scaled by itself, which this does not account for.
+     */
+    @Override
+    public double estimateNoise(Engine.Negative[] negatives) {
+        if (negatives.length == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int[][] histogram = develop(negatives, -1);
+        long total = 0;
+        for (int[] column : histogram) {
+            for (int count : column) {
+                total += count;
+            }
+        }
+        int max = getMax(histogram);
+        Histograms.give(histogram);
+        if (max == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double unit = (bilinear ? SPLAT_STEPS * SPLAT_STEPS * 4 / 9.0 : 1)
+                * (importance ? ImportanceMap.WEIGHT_UNIT : 1) * (bounded ? iterationLimit : 1);
+        return Math.sqrt(total / ((double) negatives[0].size.width * negatives[0].size.height)
+                * unit) / max;
+    }
+
+    private static int getMax(int[][] histogram) {
+        int max = 0;
+        for (int[] column : histogram) {
+            for (int count : column) {
+                max = max < count ? count : max;
+            }
+        }
+        return max;
+    }
+
+    // The band of orbits that escape after #length iterations.
+    private int getBand(int length) {
+        return escapeBands == 1 ? 0 : Math.min((int) (Math.log(length) * bandScale),
+                escapeBands - 1);
+    }
+
+    // The shortest orbit length in #band.
+    private int getBandStart(int band) {
+        int length = Math.max((int) Math.ceil(Math.exp(band / bandScale)), 1);
+        while (length > 1 && getBand(length - 1) >= band) { // Undo rounding, either way.
+            length--;
+        }
+        while (getBand(length) < band) {
+            length++;
+        }
+        return length;
+    }
+
+    /*
+     A pixel's expected count is the sample size over the pixel count times a density that
+     depends only on where the pixel is, whatever the view; so old counts are looked up at the
+     centres of the new pixels and scaled by the ratio of the two. The density also depends on
+     which seeds are sampled, i.e. on the view, which makes this an approximation for previews.
+     */
+    @Override
+    public boolean reproject(Algorithm previous, Engine.Negative[] previousNegatives,
+            double previousProgress, Engine.Negative negative) {
+        if (!(previous instanceof BBrot old) || previousProgress <= 0
+                || old.iterationLimit != iterationLimit || old.degree != degree
+                || old.escapeDistance != escapeDistance || old.escapeBands != escapeBands
+                || old.bilinear != bilinear || old.importance != importance
+                || old.bounded != bounded || !Objects.equals(old.formula, formula)) {
+            return false;
+        }
+        Dimension oldSize = previousNegatives[0].size, size = negative.size;
+        // Raw counts of a mirrored render stand for half the samples.
+        double weight = (double) sampleSize * oldSize.width * oldSize.height
+                / (old.sampleSize * previousProgress * size.width * size.height)
+                / (mirrorY ? 2 : 1);
+        int cap = negative.buffer.getDataType() == DataBuffer.TYPE_USHORT ? 0xffff
+                : Integer.MAX_VALUE;
+        boolean reprojected = false;
+        for (int band = 0; band < escapeBands; band++) {
+            int oldOffset = band * oldSize.width * oldSize.height;
+            int offset = band * size.width * size.height;
+            for (int y = 0; y < size.height; y++) {
+                int oldY = (int) Math.floor((minY + (y + 0.5) / size.height * rangeY - old.minY)
+                        / old.rangeY * oldSize.height);
+                if (oldY < 0 || oldY >= oldSize.height) {
+                    continue;
+                }
+                for (int x = 0; x < size.width; x++) {
+                    int oldX = (int) Math.floor((minX + (x + 0.5) / size.width * rangeX
+                            - old.minX) / old.rangeX * oldSize.width);
+                    if (oldX < 0 || oldX >= oldSize.width) {
+                        continue;
+                    }
+                    long count = 0;
+                    for (Engine.Negative oldNegative : previousNegatives) {
+                        count += oldNegative.buffer.getElem(oldOffset + oldY * oldSize.width
+                                + oldX);
+                        if (old.mirrorY) {
+                            count += oldNegative.buffer.getElem(oldOffset
+                                    + (oldSize.height - 1 - oldY) * oldSize.width + oldX);
+                        }
+                    }
+                    if (count > 0) {
+                        negative.buffer.setElem(offset + y * size.width + x,
+                                (int) Math.min(Math.round(count * weight), cap));
+                        reprojected = true;
+                    }
+                }
+            }
+        }
+        return reprojected;
+    }
+
+    @Override
+    public boolean isMergeable() {
+        return true;
+    }
+
+    @Override
+    public void merge(Engine.Negative target, Engine.Negative source) {
+        Histograms.merge(target, source);
+    }
+
+    @Override
+    public boolean isTunable() {
+        return true;
+    }
+
+    @Override
+    public List<String> getAccumulationModes() {
+        return accumulation.equals("auto") ? List.of("direct", "binned") : List.of(accumulation);
+    }
+
+    @Override
+    public String toString() {
+        return "bbrot";
+    }
+
+    @Override
+    public long getTaskCount(int processorCount) {
+        long freshSampleCount = sampleSize;
+        if (followed) {
+            cache = new OrbitCache(Math.min(sampleSize, MAX_CACHED_SEEDS));
+        }
+        if (source != null && source.cache != null) {
+            replay = source.cache;
+            source.cache = null;
+            double replayWeight = replay.getWeight(source.sampleSize);
+            if (replayWeight > 0) {
+                replayCount = (int) Math.min(replay.size(), orbitReuse * sampleSize / replayWeight);
+                freshSampleCount -= Math.round(replayCount * replayWeight);
+            }
+        }
+        previous = source = null;
+        long freshSeedCount = (freshSampleCount + getSymmetryOrder() - 1) / getSymmetryOrder();
+        return (replayCount + freshSeedCount + TASK_SAMPLE_SIZE - 1) / TASK_SAMPLE_SIZE;
+    }
+
+    @Override
+    public DataBuffer createNegativeBuffer(Dimension rasterSize) {
+        int size = getNegativeSize(rasterSize);
+        return bilinear || importance || bounded ? new DataBufferInt(size, 1)
+                : new DataBufferUShort(size, 1);
+    }
+
+    @Override
+    public DataBuffer createSharedNegativeBuffer(Dimension rasterSize) {
+        // As wide as an int, since it takes every worker's counts.
+        return new DataBufferInt(getNegativeSize(rasterSize), 1);
+    }
+
+    private int getNegativeSize(Dimension rasterSize) {
+        long size = (long) rasterSize.width * rasterSize.height * escapeBands;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(escapeBands + " escape bands of " + rasterSize.width
+                    + "x" + rasterSize.height + " do not fit in a negative");
+        }
+        return (int) size;
+    }
+
+    @Override
+    public long estimateProcessBytes(Dimension rasterSize) {
+        return (bandColours ? 3 : 1) * Algorithm.super.estimateProcessBytes(rasterSize);
+    }
+
+    /*
+     The seeds this frame caches for a later one, those of an earlier one it replays, and the
+     importance map, besides what each negative keeps: a binned counter, if it may bin, and the
+     working arrays of a custom formula's kernel.
+     */
+    @Override
+    public long estimateScratchBytes(Dimension rasterSize, int negativeCount) {
+        long bytes = 0;
+        if (followed) {
+            bytes += OrbitCache.estimateBytes(Math.min(sampleSize, MAX_CACHED_SEEDS));
+        }
+        if (source != null) {
+            bytes += OrbitCache.estimateBytes(Math.min(source.sampleSize, MAX_CACHED_SEEDS));
+        }
+        if (importance) {
+            bytes += ImportanceMap.estimateBytes(IMPORTANCE_GRID);
+        }
+        long perNegative = formula != null ? (2 + 2 * ORBIT_CHUNK) * Double.BYTES : 0;
+        if (getAccumulationModes().contains("binned")) {
+            perNegative += Accumulator.estimateBinnedBytes(getNegativeSize(rasterSize));
+        }
+        return bytes + negativeCount * perNegative;
+    }
+}
@@ -0,0 +1,284 @@
+package site.bsws.neb.alg;
+
+import site.bsws.neb.Engine;
+import site.bsws.neb.alg.ParameterSchema.Parameter;
+import java.awt.Dimension;
+import java.awt.image.DataBufferUShort;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *
+ * @author Arindam Biswas <arindam dot b at ftml dot net>
+ */
+public class DLA implements Algorithm {
+
+    /**
+     * Compiled parameters; see {@link #SCHEMA} for names, units and bounds. {@code formula} is
+     * null for the built-in iteration, which squares z {@code degree - 1} times before adding c:
+     * degree d iterates z^(2^(d - 1)) + c, not z^d + c, so 2 is the Mandelbrot set and 3 is
+     * z^4 + c.
+     */
+    public record Parameters(double minX, double minY, double rangeX, double rangeY,
+            int iterationLimit, double escapeDistance, int degree, int sampleSize, String colour,
+            Formula formula) {
+    }
+
+    public static class Factory implements AlgorithmFactory<Parameters> {
+
+        @Override
+        public String getName() {
+            return "dla";
+        }
+
+        @Override
+        public ParameterSchema getSchema() {
+            return SCHEMA;
+        }
+
+        @Override
+        public Parameters compile(Map<String, String> parameters) throws InvalidParameterException {
+            ParameterSchema.Values values = SCHEMA.compile(parameters);
+            return new Parameters(values.getReal("min_x"), values.getReal("min_y"),
+                    values.getReal("range_x"), values.getReal("range_y"),
+                    values.getInteger("iteration_limit"), values.getReal("escape_distance"),
+                    values.getInteger("degree"), values.getInteger("sample_size"),
+                    values.getChoice("colour"), Formula.compileParameter(values, "formula"));
+        }
+
+        @Override
+        public Algorithm create(Parameters parameters) {
+            return new DLA(parameters);
+        }
+    }
+
+    public static final ParameterSchema SCHEMA = new ParameterSchema(
+            Parameter.real("min_x", -2.0, -Double.MAX_VALUE, Double.MAX_VALUE, ""),
+            Parameter.real("min_y", -1.5, -Double.MAX_VALUE, Double.MAX_VALUE, ""),
+            Parameter.real("range_x", 3.0, Double.MIN_VALUE, Double.MAX_VALUE, ""),
+            Parameter.real("range_y", 3.0, Double.MIN_VALUE, Double.MAX_VALUE, ""),
+            Parameter.integer("iteration_limit", 500, 1, Integer.MAX_VALUE, "iterations"),
+            Parameter.real("escape_distance", 2.0, Double.MIN_VALUE, Double.MAX_VALUE, ""),
+            Parameter.integer("degree", 2, 2, 64, "(z^(2^(degree - 1)) + c)"),
+            Parameter.integer("sample_size", 10000000, 1, Integer.MAX_VALUE, "samples"),
+            Parameter.choice("colour", "blue", "red", "green", "blue"),
+            Parameter.text("formula", ""));
+    private static final int TASK_SAMPLE_SIZE = 100;
+    private static final int ORBIT_CHUNK = 1024; // Points a formula's kernel writes per call.
+    private final int iterationLimit, colourShift, sampleSize, degree;
+    private final double minX, minY, rangeX, rangeY, escapeDistance;
+    private final Formula formula;
+
+    public DLA(Parameters parameters) {
+        minX = parameters.minX();
+        minY = parameters.minY();
+        rangeX = parameters.rangeX();
+        rangeY = parameters.rangeY();
+        iterationLimit = parameters.iterationLimit();
+        sampleSize = parameters.sampleSize();
+        degree = parameters.degree();
+        escapeDistance = parameters.escapeDistance();
+        formula = parameters.formula();
+        switch (parameters.colour()) {
+            case "red":
+                colourShift = 16;
+                break;
+            case "green":
+                colourShift = 8;
+                break;
+            default:
+                colourShift = 0;
+        }
+    }
+
+    @Override
+    public int getNegativeMultiplier(int processorCount) {
+        return 1;
+    }
+
+    @Override
+    public void run(Engine.Negative negative) { // TODO: Use "advanced probabilistic techniques".
+        if (formula != null) {
+            runFormula(negative);
+            return;
+        }
+        for (int i = 1, batch = getBatchSize(negative); i <= batch; i++) {
+            int j, bufferX, bufferY; // location of (zR, zI) in histogram
+            double cR, cI, zR, zI, p;
+            // use ThreadLocalRandom for improved performance
+            cR = zR = minX + ThreadLocalRandom.current().nextDouble(rangeX);
+            cI = zI = minY + ThreadLocalRandom.current().nextDouble(rangeY);
+            // check if the sequence generated by (cR, cI) escapes
+            for (j = 0; j < iterationLimit; j++) {
+                for (int k = 1; k < degree; k++) {
+                    p = zR;
+                    zR = zR * zR - zI * zI;
+                    zI = 2 * p * zI;
+                }
+                zR += cR;
+                zI += cI;
+                if (zR * zR + zI * zI > escapeDistance * escapeDistance) {
+                    break;
+                }
+            }
+            if (j == iterationLimit) { // does the sequence escape?
+                continue;
+            }
+            zR = cR;
+            zI = cI;
+            for (j = 0; j < iterationLimit; j++) {
+                // Is the point within the rendering region?
+                if (zR >= minX && zR - minX <= rangeX && zI >= minY && zI - minY <= rangeY) {
+                    // A point on the far edge of the view falls one pixel out.
+                    bufferX = Math.min((int) (((zR - minX) / rangeX) * negative.size.width),
+                            negative.size.width - 1);
+                    bufferY = Math.min((int) (((zI - minY) / rangeY) * negative.size.height),
+                            negative.size.height - 1);
+                    negative.buffer.setElem(bufferY * negative.size.width + bufferX,
+                            negative.buffer.getElem(bufferY * negative.size.width + bufferX) + 1);
+                }
+                for (int k = 1; k < degree; k++) {
+                    p = zR;
+                    zR = zR * zR - zI * zI;
+                    zI = 2 * p * zI;
+                }
+                zR += cR;
+                zI += cI;
+            }
+        }
+    }
+
+    private static int getBatchSize(Engine.Negative negative) {
+        return negative.tuning == null ? TASK_SAMPLE_SIZE
+                : TASK_SAMPLE_SIZE * negative.tuning.batchScale();
+    }
+
+    // As run(), for a custom formula, whose kernel escapes and records orbits in one go.
+    private void runFormula(Engine.Negative negative) {
+        double[] z = (double[]) negative.data.get("z"), points = (double[]) negative.data
+                .get("orbit");
+        if (points == null) {
+            z = new double[2];
+            points = new double[2 * ORBIT_CHUNK];
+            negative.data.put("z", z);
+            negative.data.put("orbit", points);
+        }
+        double escapeSquared = escapeDistance * escapeDistance;
+        for (int i = 1, batch = getBatchSize(negative); i <= batch; i++) {
+            double cR = minX + ThreadLocalRandom.current().nextDouble(rangeX);
+            double cI = minY + ThreadLocalRandom.current().nextDouble(rangeY);
+            z[0] = cR;
+            z[1] = cI;
+            int length = 0, steps = 0;
+            while (length < iterationLimit && steps >= 0) {
+                steps = formula.orbit(z, cR, cI, points,
+                        Math.min(ORBIT_CHUNK, iterationLimit - length), escapeSquared);
+                length += Math.abs(steps);
+            }
+            if (steps >= 0) {
+                continue;
+            }
+            record(negative, cR, cI);
+            z[0] = cR;
+            z[1] = cI;
+            for (int recorded = 0; recorded < length; recorded += steps) {
+                steps = length <= ORBIT_CHUNK ? length : Math.abs(formula.orbit(z, cR, cI, points,
+                        Math.min(ORBIT_CHUNK, length - recorded), escapeSquared));
+                for (int k = 0; k < steps; k++) {
+                    record(negative, points[2 * k], points[2 * k + 1]);
+                }
+            }
+        }
+    }
+
+    // Adds the point z to the histogram if it is within the rendering region.
+    private void record(Engine.Negative negative, double zR, double zI) {
+        if (zR >= minX && zR - minX <= rangeX && zI >= minY && zI - minY <= rangeY) {
+            int bufferX = Math.min((int) (((zR - minX) / rangeX) * negative.size.width),
+                    negative.size.width - 1);
+            int bufferY = Math.min((int) (((zI - minY) / rangeY) * negative.size.height),
+                    negative.size.height - 1);
+            negative.buffer.setElem(bufferY * negative.size.width + bufferX,
+                    negative.buffer.getElem(bufferY * negative.size.width + bufferX) + 1);
+        }
+    }
+
+    @Override
+    public void process(Engine.Negative[] negatives, Engine.Positive positive) {
+        int[][] histogram = Histograms.take(negatives[0].size);
+        int max = 0; // Holds the maximum of all values in the "histogram".
+
+        for (int i = 0; i < histogram.length; i++) {
+            for (int j = 0; j < histogram[0].length; j++) {
+                for (Engine.Negative negative : negatives) {
+                    histogram[i][j] += negative.buffer.getElem(j * negative.size.width + i);
+                }
+                max = max < histogram[i][j] ? histogram[i][j] : max;
+            }
+        }
+        for (int i = 0; i < histogram.length; i++) {
+            for (int j = 0; j < histogram[0].length; j++) {
+                int posIndex = positive.getWidth() * (positive.getHeight() - j - 1) + i;
+                positive.buffer[posIndex] = 0xff000000 | (int) (255 * histogram[i][j]
+                        / (double) max) << colourShift;
+            }
+        }
+        Histograms.give(histogram);
+    }
+
+    // Counts are Poisson; see BBrot.estimateNoise().
+    @Override
+    public double estimateNoise(Engine.Negative[] negatives) {
+        if (negatives.length == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        long total = 0;
+        int max = 0;
+        for (int i = 0; i < negatives[0].buffer.getSize(); i++) {
+            int count = 0;
+            for (Engine.Negative negative : negatives) {
+                count += negative.buffer.getElem(i);
+            }
+            total += count;
+            max = Math.max(max, count);
+        }
+        return max == 0 ? Double.POSITIVE_INFINITY
+                : Math.sqrt(total / (double) negatives[0].buffer.getSize()) / max;
+    }
+
+    @Override
+    public boolean isMergeable() {
+        return true;
+    }
+
+    @Override
+    public void merge(Engine.Negative target, Engine.Negative source) {
+        Histograms.merge(target, source);
+    }
+
+    @Override
+    public boolean isTunable() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "dla";
+    }
+
+    @Override
+    public long getTaskCount(int processorCount) {
+        return (sampleSize + TASK_SAMPLE_SIZE - 1) / TASK_SAMPLE_SIZE;
+    }
+
+    // The working arrays a custom formula's kernel keeps in each negative.
+    @Override
+    public long estimateScratchBytes(Dimension rasterSize, int negativeCount) {
+        return formula != null ? negativeCount * (2 + 2 * ORBIT_CHUNK) * Double.BYTES : 0;
+    }
+
+    @Override
+    public DataBufferUShort createNegativeBuffer(Dimension rasterSize) {
+        return new DataBufferUShort((int) (rasterSize.getWidth() * rasterSize.getHeight()), 1);
+    }
+}
@@ -0,0 +1,739 @@
+package site.bsws.neb.alg;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An iteration z &rarr; f(z, c) given as a formula, such as {@code z^2 + c} (Mandelbrot),
+ * {@code (abs(re(z)) + i*abs(im(z)))^2 + c} (Burning Ship), {@code conj(z)^2 + c} (Tricorn) or
+ * {@code z^2.5 + c}.
+ * <p>
+ * A formula is a complex expression in {@code z}, {@code c}, {@code i}, {@code pi} and real
+ * numbers, with {@code + - * / ^} and the functions {@code re}, {@code im}, {@code conj},
+ * {@code abs}, {@code arg}, {@code exp}, {@code log}, {@code sqrt}, {@code sin} and {@code cos}.
+ * Exponents must be constant; integer ones are expanded into multiplications and others go
+ * through polar form (write {@code exp(w * log(z))} for others still).
+ * <p>
+ * Formulas are not interpreted: each is compiled into a hidden class whose orbit loop has the
+ * formula inlined as straight-line arithmetic on real and imaginary parts, with constants folded
+ * and parts known to be zero dropped. Every formula thus gets its own monomorphic loop, which the
+ * JIT compiles as it would a hand-written one. The last {@value #MAX_COMPILED} formulas compiled
+ * are kept by source, so rendering one again reuses its class and its compiled code; the classes
+ * of others are unloaded once no longer used. A kernel's code must fit in what a branch can span,
+ * so formulas that would compile to more than {@value #MAX_CODE_LENGTH} bytes are refused.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public abstract class Formula {
+
+    public static final int MAX_COMPILED = 64, MAX_CODE_LENGTH = 32000;
+    // Least recently compiled first.
+    private static final Map<String, Formula> compiled = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Formula> eldest) {
+            return size() > MAX_COMPILED;
+        }
+    });
+    private final String source;
+
+    protected Formula(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Iterates from {@code z} for up to {@code count} steps, writing each new point to
+     * {@code points} (real and imaginary parts in turn) and stopping after the first whose squared
+     * magnitude exceeds {@code escapeSquared}; the last point is written back to {@code z}, so the
+     * orbit can be continued by another call.
+     *
+     * @return the number of steps taken, negated if the last one escaped.
+     */
+    public abstract int orbit(double[] z, double cR, double cI, double[] points, int count,
+            double escapeSquared);
+
+    /**
+     * @throws IllegalArgumentException if {@code source} is not a valid formula, with a message
+     * saying where and why.
+     */
+    public static Formula compile(String source) {
+        return compiled.computeIfAbsent(source.trim(), key -> define(key,
+                new Compiler(key).compile()));
+    }
+
+    /**
+     * @return the formula in the named text parameter compiled, or null if it is empty, which
+     * stands for an algorithm's built-in iteration.
+     * @throws InvalidParameterException if it is not a valid formula.
+     */
+    public static Formula compileParameter(ParameterSchema.Values values, String name)
+            throws InvalidParameterException {
+        String formula = values.getText(name).trim();
+        try {
+            return formula.isEmpty() ? null : compile(formula);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidParameterException(name, ex.getMessage());
+        }
+    }
+
+    private static Formula define(String source, byte[] bytes) {
+        try {
+            return (Formula) MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass()
+                    .getConstructor(String.class).newInstance(source);
+        } catch (LinkageError ex) { // Refused by the verifier, which the limits should prevent.
+            throw new IllegalArgumentException("cannot compile '" + source + "': " + ex, ex);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot load the kernel of " + source, ex);
+        }
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof Formula formula && formula.source.equals(source);
+    }
+
+    @Override
+    public int hashCode() {
+        return source.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    // A real value at compile time: either a constant or a local variable (slot) of the kernel.
+    private record Operand(int slot, double value) {
+
+        static Operand constant(double value) {
+            return new Operand(-1, value);
+        }
+
+        boolean isConstant() {
+            return slot < 0;
+        }
+
+        boolean is(double constant) {
+            return slot < 0 && value == constant;
+        }
+    }
+
+    private record Value(Operand re, Operand im) {
+
+        static Value real(Operand re) {
+            return new Value(re, Operand.constant(0));
+        }
+    }
+
+    private static final class Bytes extends ByteArrayOutputStream {
+
+        void u1(int value) {
+            write(value);
+        }
+
+        void u2(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void patch2(int at, int value) {
+            buf[at] = (byte) (value >>> 8);
+            buf[at + 1] = (byte) value;
+        }
+    }
+
+    private static final class ConstantPool {
+
+        private final Bytes bytes = new Bytes();
+        private final Map<String, Integer> indices = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String string) {
+            Integer index = indices.get("U" + string);
+            if (index == null) {
+                byte[] utf = string.getBytes(StandardCharsets.UTF_8); // Names are ASCII.
+                bytes.u1(1);
+                bytes.u2(utf.length);
+                bytes.writeBytes(utf);
+                index = add("U" + string, 1);
+            }
+            return index;
+        }
+
+        int classRef(String name) {
+            Integer index = indices.get("C" + name);
+            if (index == null) {
+                int nameIndex = utf8(name);
+                bytes.u1(7);
+                bytes.u2(nameIndex);
+                index = add("C" + name, 1);
+            }
+            return index;
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            String key = "M" + owner + "." + name + descriptor;
+            Integer index = indices.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner), nameIndex = utf8(name),
+                        descriptorIndex = utf8(descriptor);
+                bytes.u1(12);
+                bytes.u2(nameIndex);
+                bytes.u2(descriptorIndex);
+                int nameAndType = add("N" + key, 1);
+                bytes.u1(10);
+                bytes.u2(ownerIndex);
+                bytes.u2(nameAndType);
+                index = add(key, 1);
+            }
+            return index;
+        }
+
+        int constant(double value) {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = indices.get(key);
+            if (index == null) {
+                long bits = Double.doubleToRawLongBits(value);
+                bytes.u1(6);
+                bytes.u4((int) (bits >>> 32));
+                bytes.u4((int) bits);
+                index = add(key, 2);
+            }
+            return index;
+        }
+
+        private int add(String key, int size) {
+            indices.put(key, count);
+            count += size;
+            return count - size;
+        }
+    }
+
+    /*
+     Parses a formula by recursive descent, emitting the kernel's code as it goes. The kernel is
+     compiled for class file version 49, whose verifier infers types itself, so that no stack map
+     frames need be computed for its loop. Branch offsets are signed 16-bit, so the loop's code is
+     kept within MAX_CODE_LENGTH, which leaves room for what follows the formula, and its locals
+     within what max_locals can count; nesting is bounded so as not to run out of stack.
+     */
+    private static final class Compiler {
+
+        private static final String NAME = "site/bsws/neb/alg/Formula$Kernel",
+                SUPER = "site/bsws/neb/alg/Formula", MATH = "java/lang/Math";
+        // Local variables of orbit(): arguments, then z, the step, its index in points,
+        // temporaries.
+        private static final int Z = 1, C_RE = 2, C_IM = 4, POINTS = 6, COUNT = 7, ESCAPE = 8,
+                Z_RE = 10, Z_IM = 12, STEP = 14, INDEX = 15, TEMPORARIES = 16;
+        private static final int ICONST_0 = 0x03, ICONST_1 = 0x04, DCONST_0 = 0x0e,
+                DCONST_1 = 0x0f, LDC2_W = 0x14, ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19,
+                DALOAD = 0x31, ISTORE = 0x36, DSTORE = 0x39, DASTORE = 0x52, IADD = 0x60,
+                DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, INEG = 0x74, DNEG = 0x77,
+                IINC = 0x84, DCMPL = 0x97, IFLE = 0x9e, IF_ICMPGE = 0xa2, IRETURN = 0xac,
+                RETURN = 0xb1, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, WIDE = 0xc4;
+        private static final int MAX_LOCALS = 0xffff, MAX_DEPTH = 256;
+        private static final Value ONE = Value.real(Operand.constant(1));
+        private final String source;
+        private final ConstantPool pool = new ConstantPool();
+        private final Bytes code = new Bytes();
+        private int position, nextSlot = TEMPORARIES, depth;
+
+        Compiler(String source) {
+            this.source = source;
+        }
+
+        byte[] compile() {
+            loadZ();
+            local(ISTORE, STEP, ICONST_0);
+            local(ISTORE, INDEX, ICONST_0);
+            int loop = code.size();
+            local(ILOAD, STEP, -1);
+            local(ILOAD, COUNT, -1);
+            int exit = code.size();
+            code.u1(IF_ICMPGE);
+            code.u2(0);
+            Value next = parseExpression();
+            if (position < source.length()) {
+                throw error("unexpected '" + source.charAt(position) + "'");
+            }
+            load(next.re());
+            load(next.im());
+            local(DSTORE, Z_IM, -1);
+            local(DSTORE, Z_RE, -1);
+            storePoint(0, Z_RE);
+            storePoint(1, Z_IM);
+            code.u1(IINC);
+            code.u1(STEP);
+            code.u1(1);
+            code.u1(IINC);
+            code.u1(INDEX);
+            code.u1(2);
+            local(DLOAD, Z_RE, -1);
+            local(DLOAD, Z_RE, -1);
+            code.u1(DMUL);
+            local(DLOAD, Z_IM, -1);
+            local(DLOAD, Z_IM, -1);
+            code.u1(DMUL);
+            code.u1(DADD);
+            local(DLOAD, ESCAPE, -1);
+            code.u1(DCMPL);
+            code.u1(IFLE);
+            code.u2(loop - (code.size() - 1));
+            storeZ();
+            local(ILOAD, STEP, -1);
+            code.u1(INEG);
+            code.u1(IRETURN);
+            code.patch2(exit + 1, code.size() - exit);
+            storeZ();
+            local(ILOAD, STEP, -1);
+            code.u1(IRETURN);
+            return assemble();
+        }
+
+        private byte[] assemble() {
+            Bytes constructor = new Bytes();
+            constructor.u1(0x2a); // aload_0
+            constructor.u1(0x2b); // aload_1
+            constructor.u1(INVOKESPECIAL);
+            constructor.u2(pool.methodRef(SUPER, "<init>", "(Ljava/lang/String;)V"));
+            constructor.u1(RETURN);
+            int thisClass = pool.classRef(NAME), superClass = pool.classRef(SUPER);
+            int init = pool.utf8("<init>"), initDescriptor = pool.utf8("(Ljava/lang/String;)V");
+            int orbit = pool.utf8("orbit"), orbitDescriptor = pool.utf8("([DDD[DID)I");
+            int codeName = pool.utf8("Code");
+            Bytes out = new Bytes();
+            out.u4(0xcafebabe);
+            out.u2(0);
+            out.u2(49);
+            out.u2(pool.count);
+            out.writeBytes(pool.bytes.toByteArray());
+            out.u2(0x0031); // public final super
+            out.u2(thisClass);
+            out.u2(superClass);
+            out.u2(0); // Interfaces.
+            out.u2(0); // Fields.
+            out.u2(2);
+            method(out, 0x0001, init, initDescriptor, codeName, 2, 2, constructor);
+            method(out, 0x0011, orbit, orbitDescriptor, codeName, 8, nextSlot, code);
+            out.u2(0); // Attributes.
+            return out.toByteArray();
+        }
+
+        private static void method(Bytes out, int access, int name, int descriptor, int codeName,
+                int maxStack, int maxLocals, Bytes code) {
+            out.u2(access);
+            out.u2(name);
+            out.u2(descriptor);
+            out.u2(1);
+            out.u2(codeName);
+            out.u4(12 + code.size());
+            out.u2(maxStack);
+            out.u2(maxLocals);
+            out.u4(code.size());
+            out.writeBytes(code.toByteArray());
+            out.u2(0); // Exception table.
+            out.u2(0); // Attributes.
+        }
+
+        // Emits an instruction on a local variable, after pushing #constant if it is not -1.
+        private void local(int opcode, int slot, int constant) {
+            if (constant >= 0) {
+                code.u1(constant);
+            }
+            if (slot > 0xff) {
+                code.u1(WIDE);
+                code.u1(opcode);
+                code.u2(slot);
+            } else {
+                code.u1(opcode);
+                code.u1(slot);
+            }
+        }
+
+        private void loadZ() {
+            local(ALOAD, Z, -1);
+            code.u1(ICONST_0);
+            code.u1(DALOAD);
+            local(DSTORE, Z_RE, -1);
+            local(ALOAD, Z, -1);
+            code.u1(ICONST_1);
+            code.u1(DALOAD);
+            local(DSTORE, Z_IM, -1);
+        }
+
+        private void storeZ() {
+            local(ALOAD, Z, -1);
+            code.u1(ICONST_0);
+            local(DLOAD, Z_RE, -1);
+            code.u1(DASTORE);
+            local(ALOAD, Z, -1);
+            code.u1(ICONST_1);
+            local(DLOAD, Z_IM, -1);
+            code.u1(DASTORE);
+        }
+
+        // points[index + part] = slot
+        private void storePoint(int part, int slot) {
+            local(ALOAD, POINTS, -1);
+            local(ILOAD, INDEX, -1);
+            if (part > 0) {
+                code.u1(ICONST_1);
+                code.u1(IADD);
+            }
+            local(DLOAD, slot, -1);
+            code.u1(DASTORE);
+        }
+
+        private void load(Operand operand) {
+            if (!operand.isConstant()) {
+                local(DLOAD, operand.slot(), -1);
+            } else if (Double.doubleToRawLongBits(operand.value()) == 0) {
+                code.u1(DCONST_0);
+            } else if (operand.value() == 1) {
+                code.u1(DCONST_1);
+            } else {
+                code.u1(LDC2_W);
+                code.u2(pool.constant(operand.value()));
+            }
+        }
+
+        // Every operation emitted ends here, so this is where the kernel's size is checked.
+        private Operand store() {
+            if (code.size() > MAX_CODE_LENGTH || nextSlot + 2 > MAX_LOCALS) {
+                throw error("formula too long to compile");
+            }
+            Operand result = new Operand(nextSlot, 0);
+            local(DSTORE, nextSlot, -1);
+            nextSlot += 2;
+            return result;
+        }
+
+        private Operand emit(int opcode, Operand a, Operand b) {
+            load(a);
+            load(b);
+            code.u1(opcode);
+            return store();
+        }
+
+        /*
+         Real arithmetic, folding constants and dropping zeros. A part known to be zero, such as
+         that of a real, is exactly zero, so 0 * x and 0 / x are taken as 0 even where x is
+         infinite or NaN and IEEE arithmetic would give NaN: exp(2 * log(z)) at z = 0 comes to 0,
+         as z^2 does.
+         */
+        private Operand add(Operand a, Operand b) {
+            if (a.isConstant() && b.isConstant()) {
+                return Operand.constant(a.value() + b.value());
+            }
+            return a.is(0) ? b : b.is(0) ? a : emit(DADD, a, b);
+        }
+
+        private Operand subtract(Operand a, Operand b) {
+            if (a.isConstant() && b.isConstant()) {
+                return Operand.constant(a.value() - b.value());
+            }
+            return b.is(0) ? a : a.is(0) ? negate(b) : emit(DSUB, a, b);
+        }
+
+        private Operand multiply(Operand a, Operand b) {
+            if (a.isConstant() && b.isConstant()) {
+                return Operand.constant(a.value() * b.value());
+            }
+            if (a.is(0) || b.is(0)) {
+                return Operand.constant(0);
+            }
+            return a.is(1) ? b : b.is(1) ? a : a.is(-1) ? negate(b) : b.is(-1) ? negate(a)
+                    : emit(DMUL, a, b);
+        }
+
+        private Operand divide(Operand a, Operand b) {
+            if (a.isConstant() && b.isConstant()) {
+                return Operand.constant(a.value() / b.value());
+            }
+            return a.is(0) ? a : b.is(1) ? a : emit(DDIV, a, b);
+        }
+
+        private Operand negate(Operand a) {
+            if (a.isConstant()) {
+                return Operand.constant(-a.value());
+            }
+            load(a);
+            code.u1(DNEG);
+            return store();
+        }
+
+        private Operand call(String name, DoubleUnaryOperator function, Operand a) {
+            if (a.isConstant()) {
+                return Operand.constant(function.applyAsDouble(a.value()));
+            }
+            load(a);
+            code.u1(INVOKESTATIC);
+            code.u2(pool.methodRef(MATH, name, "(D)D"));
+            return store();
+        }
+
+        private Operand call(String name, DoubleBinaryOperator function, Operand a, Operand b) {
+            if (a.isConstant() && b.isConstant()) {
+                return Operand.constant(function.applyAsDouble(a.value(), b.value()));
+            }
+            load(a);
+            load(b);
+            code.u1(INVOKESTATIC);
+            code.u2(pool.methodRef(MATH, name, "(DD)D"));
+            return store();
+        }
+
+        // Complex arithmetic.
+        private Value add(Value a, Value b) {
+            return new Value(add(a.re(), b.re()), add(a.im(), b.im()));
+        }
+
+        private Value subtract(Value a, Value b) {
+            return new Value(subtract(a.re(), b.re()), subtract(a.im(), b.im()));
+        }
+
+        private Value multiply(Value a, Value b) {
+            if (a.equals(b)) {
+                Operand product = multiply(a.re(), a.im());
+                return new Value(subtract(multiply(a.re(), a.re()), multiply(a.im(), a.im())),
+                        add(product, product));
+            }
+            return new Value(subtract(multiply(a.re(), b.re()), multiply(a.im(), b.im())),
+                    add(multiply(a.re(), b.im()), multiply(a.im(), b.re())));
+        }
+
+        private Value divide(Value a, Value b) {
+            if (b.im().is(0)) {
+                return new Value(divide(a.re(), b.re()), divide(a.im(), b.re()));
+            }
+            Operand norm = add(multiply(b.re(), b.re()), multiply(b.im(), b.im()));
+            return new Value(divide(add(multiply(a.re(), b.re()), multiply(a.im(), b.im())), norm),
+                    divide(subtract(multiply(a.im(), b.re()), multiply(a.re(), b.im())), norm));
+        }
+
+        private Value power(Value base, Value exponent) {
+            if (!exponent.re().isConstant() || !exponent.im().isConstant()) {
+                throw error("exponents must be constant, write exp(w * log(z)) instead");
+            }
+            double p = exponent.re().value();
+            if (!exponent.im().is(0)) {
+                return exp(multiply(exponent, log(base)));
+            }
+            if (p == Math.rint(p) && Math.abs(p) <= 64) { // By squaring.
+                Value result = ONE, factor = base;
+                for (long n = (long) Math.abs(p); n > 0; n >>= 1) {
+                    if ((n & 1) != 0) {
+                        result = result == ONE ? factor : multiply(result, factor);
+                    }
+                    if (n > 1) {
+                        factor = multiply(factor, factor);
+                    }
+                }
+                return p < 0 ? divide(ONE, result) : result;
+            }
+            Operand norm = add(multiply(base.re(), base.re()), multiply(base.im(), base.im()));
+            Operand magnitude = call("pow", Math::pow, norm, Operand.constant(p / 2));
+            Operand angle = multiply(call("atan2", Math::atan2, base.im(), base.re()),
+                    Operand.constant(p));
+            return new Value(multiply(magnitude, call("cos", Math::cos, angle)),
+                    multiply(magnitude, call("sin", Math::sin, angle)));
+        }
+
+        private Value exp(Value a) {
+            Operand magnitude = call("exp", Math::exp, a.re());
+            return new Value(multiply(magnitude, call("cos", Math::cos, a.im())),
+                    multiply(magnitude, call("sin", Math::sin, a.im())));
+        }
+
+        private Value log(Value a) {
+            Operand norm = add(multiply(a.re(), a.re()), multiply(a.im(), a.im()));
+            return new Value(multiply(call("log", Math::log, norm), Operand.constant(0.5)),
+                    call("atan2", Math::atan2, a.im(), a.re()));
+        }
+
+        private Value apply(String function, Value a) {
+            switch (function) {
+                case "re":
+                    return Value.real(a.re());
+                case "im":
+                    return Value.real(a.im());
+                case "conj":
+                    return new Value(a.re(), negate(a.im()));
+                case "abs":
+                    return Value.real(a.im().is(0) ? call("abs", Math::abs, a.re())
+                            : call("sqrt", Math::sqrt, add(multiply(a.re(), a.re()),
+                                    multiply(a.im(), a.im()))));
+                case "arg":
+                    return Value.real(call("atan2", Math::atan2, a.im(), a.re()));
+                case "exp":
+                    return exp(a);
+                case "log":
+                    return log(a);
+                case "sqrt":
+                    return power(a, Value.real(Operand.constant(0.5)));
+                case "sin":
+                    return new Value(multiply(call("sin", Math::sin, a.re()),
+                            call("cosh", Math::cosh, a.im())),
+                            multiply(call("cos", Math::cos, a.re()),
+                                    call("sinh", Math::sinh, a.im())));
+                case "cos":
+                    return new Value(multiply(call("cos", Math::cos, a.re()),
+                            call("cosh", Math::cosh, a.im())),
+                            negate(multiply(call("sin", Math::sin, a.re()),
+                                    call("sinh", Math::sinh, a.im()))));
+                default:
+                    throw error("unknown function '" + function + "'");
+            }
+        }
+
+        // expression := term (('+' | '-') term)*
+        private Value parseExpression() {
+            Value value = parseTerm();
+            while (true) {
+                if (accept('+')) {
+                    value = add(value, parseTerm());
+                } else if (accept('-')) {
+                    value = subtract(value, parseTerm());
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        // term := unary (('*' | '/') unary)*
+        private Value parseTerm() {
+            Value value = parseUnary();
+            while (true) {
+                if (accept('*')) {
+                    value = multiply(value, parseUnary());
+                } else if (accept('/')) {
+                    value = divide(value, parseUnary());
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        // unary := ('-' | '+') unary | atom ('^' unary)?
+        private Value parseUnary() {
+            if (++depth > MAX_DEPTH) {
+                throw error("formula nested too deeply");
+            }
+            Value value = parseUnaryNested();
+            depth--;
+            return value;
+        }
+
+        private Value parseUnaryNested() {
+            if (accept('-')) {
+                Value value = parseUnary();
+                return new Value(negate(value.re()), negate(value.im()));
+            }
+            if (accept('+')) {
+                return parseUnary();
+            }
+            Value base = parseAtom();
+            return accept('^') ? power(base, parseUnary()) : base;
+        }
+
+        // atom := number | name | function '(' expression ')' | '(' expression ')'
+        private Value parseAtom() {
+            skipSpaces();
+            if (accept('(')) {
+                Value value = parseExpression();
+                expect(')');
+                return value;
+            }
+            int start = position;
+            if (position < source.length() && (Character.isDigit(source.charAt(position))
+                    || source.charAt(position) == '.')) {
+                while (position < source.length() && (Character.isDigit(source.charAt(position))
+                        || source.charAt(position) == '.')) {
+                    position++;
+                }
+                if (position < source.length() && (source.charAt(position) == 'e'
+                        || source.charAt(position) == 'E')) {
+                    position++;
+                    if (position < source.length() && (source.charAt(position) == '+'
+                            || source.charAt(position) == '-')) {
+                        position++;
+                    }
+                    while (position < source.length()
+                            && Character.isDigit(source.charAt(position))) {
+                        position++;
+                    }
+                }
+                try {
+                    return Value.real(Operand.constant(Double.parseDouble(source.substring(start,
+                            position))));
+                } catch (NumberFormatException ex) {
+                    position = start;
+                    throw error("malformed number");
+                }
+            }
+            while (position < source.length() && Character.isLetter(source.charAt(position))) {
+                position++;
+            }
+            String name = source.substring(start, position);
+            switch (name) {
+                case "":
+                    throw error(position < source.length() ? "unexpected '"
+                            + source.charAt(position) + "'" : "unexpected end");
+                case "z":
+                    return new Value(new Operand(Z_RE, 0), new Operand(Z_IM, 0));
+                case "c":
+                    return new Value(new Operand(C_RE, 0), new Operand(C_IM, 0));
+                case "i":
+                    return new Value(Operand.constant(0), Operand.constant(1));
+                case "pi":
+                    return Value.real(Operand.constant(Math.PI));
+                default:
+                    expect('(');
+                    Value argument = parseExpression();
+                    expect(')');
+                    int end = position;
+                    position = start; // Errors applying a function are at its name.
+                    Value value = apply(name, argument);
+                    position = end;
+                    return value;
+            }
+        }
+
+        private void skipSpaces() {
+            while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (position < source.length() && source.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!accept(c)) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (position + 1)
+                    + " of '" + source + "'");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package site.bsws.neb.alg;
+
+import site.bsws.neb.Engine;
+import java.awt.Dimension;
+import java.awt.image.DataBufferInt;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Operations on negatives whose buffers are histograms of sample counts.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class Histograms {
+
+    // As many as two developments at once take, e.g. a render's and a preview's, of three
+    // channels each.
+    private static final int MAX_KEPT = 6;
+    // Of the raster size last taken, held softly, as they are only there to be reused.
+    private static final ArrayDeque<SoftReference<int[][]>> kept = new ArrayDeque<>();
+
+    private Histograms() {
+    }
+
+    /**
+     * @return a zeroed histogram indexed by column, then row, reused from one given back if there
+     * is one of the size, so that developing again at the same size allocates none.
+     */
+    static int[][] take(Dimension size) {
+        int[][] histogram = null;
+        synchronized (kept) {
+            while (histogram == null && !kept.isEmpty()) {
+                histogram = kept.poll().get();
+                if (histogram != null && (histogram.length != size.width
+                        || histogram[0].length != size.height)) {
+                    kept.clear(); // Sizes change rarely, and then for good.
+                    histogram = null;
+                }
+            }
+        }
+        if (histogram == null) {
+            return new int[size.width][size.height];
+        }
+        for (int[] column : histogram) {
+            Arrays.fill(column, 0);
+        }
+        return histogram;
+    }
+
+    /**
+     * Gives back histograms taken with {@link #take(Dimension)} that are done with.
+     */
+    static void give(int[][]... histograms) {
+        synchronized (kept) {
+            for (int[][] histogram : histograms) {
+                if (kept.size() < MAX_KEPT) {
+                    kept.push(new SoftReference<>(histogram));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of {@code source} into {@code target}. A target narrower than an int, as
+     * negatives are allocated to save memory, is first widened so that the sums cannot wrap; sums
+     * past the top of an int stop there.
+     */
+    static void merge(Engine.Negative target, Engine.Negative source) {
+        if (!(target.buffer instanceof DataBufferInt)) {
+            DataBufferInt wide = new DataBufferInt(target.buffer.getSize());
+            int[] counts = wide.getData();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = target.buffer.getElem(i);
+            }
+            target.buffer = wide;
+        }
+        int[] counts = ((DataBufferInt) target.buffer).getData();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = (int) Math.min((long) counts[i] + source.buffer.getElem(i),
+                    Integer.MAX_VALUE);
+        }
+    }
+}
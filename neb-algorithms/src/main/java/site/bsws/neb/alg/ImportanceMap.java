@@ -0,0 +1,103 @@
+package site.bsws.neb.alg;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A distribution of seeds over a rectangle that favours the boundary of the set, built from a
+ * coarse escape-time pass over a grid of cells. Seeds deep inside the set never escape and seeds
+ * far outside it escape at once, so neither leaves much of an orbit; cells whose corners disagree
+ * on escaping, or escape late, are drawn more often.
+ * <p>
+ * Every cell keeps at least {@link #WEIGHT_UNIT}th of the density of the most favoured ones, and
+ * each seed carries the weight that makes up for its cell's density, in fixed point: a uniform
+ * seed would weigh {@link #WEIGHT_UNIT}. So the expected histogram is that of uniform sampling,
+ * scaled by {@link #WEIGHT_UNIT}, whatever the grid misses.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class ImportanceMap {
+
+    /**
+     * The escape time of a seed, in iterations, up to a limit that stands for never.
+     */
+    interface EscapeTime {
+
+        int of(double cR, double cI);
+    }
+
+    static final int WEIGHT_UNIT = 8;
+    private static final double MIN_SCORE = 1.0 / WEIGHT_UNIT;
+    private final int size;
+    private final double minX, minY, cellWidth, cellHeight;
+    private final double[] cumulative, weights;
+
+    /**
+     * @return about how many bytes a map of {@code size} cells a side takes at the most, i.e. while
+     * it is being scored.
+     */
+    static long estimateBytes(int size) {
+        return (long) (size + 1) * (size + 1) * Integer.BYTES + 3L * size * size * Double.BYTES;
+    }
+
+    /**
+     * Scores {@code size} by {@code size} cells over the rectangle by the escape times of their
+     * corners, where {@code limit} is the escape time of seeds that do not escape.
+     */
+    ImportanceMap(double minX, double minY, double rangeX, double rangeY, int size, int limit,
+            EscapeTime escapeTime) {
+        this.size = size;
+        this.minX = minX;
+        this.minY = minY;
+        cellWidth = rangeX / size;
+        cellHeight = rangeY / size;
+        int[] corners = new int[(size + 1) * (size + 1)];
+        for (int y = 0; y <= size; y++) {
+            for (int x = 0; x <= size; x++) {
+                corners[y * (size + 1) + x] = escapeTime.of(minX + x * cellWidth,
+                        minY + y * cellHeight);
+            }
+        }
+        double[] scores = new double[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int interior = 0, longest = 1;
+                for (int corner : new int[]{corners[y * (size + 1) + x],
+                    corners[y * (size + 1) + x + 1], corners[(y + 1) * (size + 1) + x],
+                    corners[(y + 1) * (size + 1) + x + 1]}) {
+                    if (corner >= limit) {
+                        interior++;
+                    } else {
+                        longest = Math.max(longest, corner);
+                    }
+                }
+                scores[y * size + x] = interior == 4 ? MIN_SCORE : interior > 0 || limit < 2 ? 1
+                        : MIN_SCORE + (1 - MIN_SCORE) * Math.log(longest) / Math.log(limit);
+            }
+        }
+        cumulative = new double[scores.length];
+        double total = 0;
+        for (int i = 0; i < scores.length; i++) {
+            cumulative[i] = total += scores[i];
+        }
+        weights = new double[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            weights[i] = WEIGHT_UNIT * total / scores.length / scores[i];
+        }
+    }
+
+    /**
+     * Draws a seed into {@code seed[0]} (real part) and {@code seed[1]} (imaginary part).
+     *
+     * @return its weight, rounded at random to a whole number of which the weight is the
+     * expectation; it may be 0, in which case the seed need not be traced.
+     */
+    int sample(ThreadLocalRandom random, double[] seed) {
+        int cell = Arrays.binarySearch(cumulative,
+                random.nextDouble(cumulative[cumulative.length - 1]));
+        cell = Math.min(cell < 0 ? -cell - 1 : cell + 1, cumulative.length - 1);
+        seed[0] = minX + (cell % size + random.nextDouble()) * cellWidth;
+        seed[1] = minY + (cell / size + random.nextDouble()) * cellHeight;
+        return (int) (weights[cell] + random.nextDouble());
+    }
+}
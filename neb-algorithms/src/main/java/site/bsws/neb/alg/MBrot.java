@@ -70,8 +70,8 @@ public class MBrot implements Algorithm {
     }
 
     @Override
-    public int getTaskIterationGoal(int processorCount) {
-        return 1;
+    public long getTaskCount(int processorCount) {
+        return (long) aaMultiplier * processorCount; // One per negative.
     }
 
     @Override
@@ -0,0 +1,61 @@
+package site.bsws.neb.alg;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The productive seeds of one frame, i.e. the values of {@code c} whose orbits escaped and left at
+ * least one point in the view, kept so that a later frame of the same sequence can replay them
+ * instead of rediscovering them by uniform sampling. Recording is lock-free and may be done by
+ * several workers at once; once full, further seeds are counted but not stored.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class OrbitCache {
+
+    private final double[] seedsR, seedsI;
+    private final AtomicInteger recordedCount = new AtomicInteger();
+    private final AtomicLong productiveCount = new AtomicLong();
+
+    OrbitCache(int capacity) {
+        seedsR = new double[capacity];
+        seedsI = new double[capacity];
+    }
+
+    static long estimateBytes(int capacity) {
+        return 2L * capacity * Double.BYTES;
+    }
+
+    void record(double cR, double cI) {
+        productiveCount.incrementAndGet();
+        if (recordedCount.get() < seedsR.length) {
+            int slot = recordedCount.getAndIncrement();
+            if (slot < seedsR.length) {
+                seedsR[slot] = cR;
+                seedsI[slot] = cI;
+            }
+        }
+    }
+
+    int size() {
+        return Math.min(recordedCount.get(), seedsR.length);
+    }
+
+    double getR(int i) {
+        return seedsR[i];
+    }
+
+    double getI(int i) {
+        return seedsI[i];
+    }
+
+    /**
+     * @param sampleCount the number of uniform samples the frame that filled this cache drew (or
+     * stood in for).
+     * @return how many uniform samples replaying one stored seed stands for.
+     */
+    double getWeight(long sampleCount) {
+        long productive = productiveCount.get();
+        return productive == 0 ? 0 : sampleCount / (double) productive;
+    }
+}
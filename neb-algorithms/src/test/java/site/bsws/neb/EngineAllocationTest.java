@@ -0,0 +1,49 @@
+package site.bsws.neb;
+
+import java.awt.Dimension;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Renders again at the same size, which should take up the negatives and histograms of the render
+ * before rather than allocate its own, and so allocate next to nothing.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class EngineAllocationTest {
+
+    private static final Dimension SIZE = new Dimension(512, 512);
+    // A 16-bit negative of SIZE is 512 KiB; a render allocating a tenth of that reuses none.
+    private static final long MAX_BYTES = 512 * 512 * 2 / 10;
+
+    @Test
+    void renderingAgainAllocatesNoNegatives() throws Exception {
+        Engine engine = new Engine((Engine.Listener) Proxy.newProxyInstance(
+                Engine.class.getClassLoader(), new Class<?>[]{Engine.Listener.class},
+                (proxy, method, args) -> null), 2);
+        engine.start();
+        try {
+            engine.setRasterSize(SIZE);
+            engine.setAlgorithm("bbrot");
+            engine.setParameters(Map.of("sample_size", "20000", "iteration_limit", "200"));
+            com.sun.management.ThreadMXBean threads
+                    = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long bytes = Long.MAX_VALUE;
+            // The best of a few, as the JIT and class loading may still allocate in the first.
+            for (int render = 0; render < 4; render++) {
+                long before = threads.getTotalThreadAllocatedBytes();
+                engine.render().getResult().get();
+                long allocated = threads.getTotalThreadAllocatedBytes() - before;
+                if (render > 0) {
+                    bytes = Math.min(bytes, allocated);
+                }
+            }
+            assertTrue(bytes < MAX_BYTES, "Rendering again allocated " + bytes + " bytes");
+        } finally {
+            engine.stop();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.BBrot;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class MemoryPlannerTest {
+
+    private static final Dimension SIZE = new Dimension(64, 64);
+    private static final int SAMPLE_SIZE = 1 << 22;
+    // Both coordinates of a seed, for every sample.
+    private static final long CACHE_BYTES = 2L * SAMPLE_SIZE * Double.BYTES;
+
+    private static BBrot createFrame() throws Exception {
+        return new BBrot(new BBrot.Factory().compile(Map.of("orbit_reuse", "0.5",
+                "sample_size", Integer.toString(SAMPLE_SIZE))));
+    }
+
+    private static MemoryPlanner.Plan plan(BBrot frame, long budget) {
+        return MemoryPlanner.plan(frame, SIZE, 1, 1, true, false, false, 0, budget);
+    }
+
+    @Test
+    void refusesAFollowedFrameWithoutRoomForItsSeeds() throws Exception {
+        long budget = plan(createFrame(), Long.MAX_VALUE).bytes();
+        List<BBrot> frames = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            frames.add(createFrame());
+            if (i > 0) {
+                frames.get(i).follow(frames.get(i - 1));
+            }
+        }
+        // The third frame caches its seeds for the last and replays those of the first.
+        BBrot third = frames.get(2);
+        assertThrows(IllegalStateException.class, () -> plan(third, budget));
+        assertTrue(plan(third, Long.MAX_VALUE).bytes() >= budget + 2 * CACHE_BYTES);
+    }
+}
@@ -0,0 +1,133 @@
+package site.bsws.neb.alg;
+
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class FormulaTest {
+
+    private static final double C_RE = -0.5, C_IM = 0.3, TOLERANCE = 1e-12;
+
+    // The point after one step of the formula from (zR, zI), with c at (C_RE, C_IM).
+    private static double[] step(String source, double zR, double zI) {
+        double[] z = {zR, zI}, points = new double[2];
+        assertEquals(1, Formula.compile(source).orbit(z, C_RE, C_IM, points, 1, 1e300));
+        assertArrayEquals(z, points);
+        return z;
+    }
+
+    private static void assertStep(String source, double zR, double zI, double re, double im) {
+        assertArrayEquals(new double[]{re, im}, step(source, zR, zI), TOLERANCE, source);
+    }
+
+    @Test
+    void compilesArithmetic() {
+        double zR = 0.7, zI = -0.4;
+        assertStep("z^2 + c", zR, zI, zR * zR - zI * zI + C_RE, 2 * zR * zI + C_IM);
+        assertStep("z*z*z + c", zR, zI, zR * zR * zR - 3 * zR * zI * zI + C_RE,
+                3 * zR * zR * zI - zI * zI * zI + C_IM);
+        assertStep("z^3 + c", zR, zI, zR * zR * zR - 3 * zR * zI * zI + C_RE,
+                3 * zR * zR * zI - zI * zI * zI + C_IM);
+        assertStep("(abs(re(z)) + i*abs(im(z)))^2 + c", zR, zI,
+                zR * zR - zI * zI + C_RE, 2 * Math.abs(zR * zI) + C_IM);
+        assertStep("conj(z)^2 + c", zR, zI, zR * zR - zI * zI + C_RE, -2 * zR * zI + C_IM);
+        double norm = zR * zR + zI * zI;
+        assertStep("1 / z", zR, zI, zR / norm, -zI / norm);
+        assertStep("z / (1 + i) - 2*c", zR, zI, (zR + zI) / 2 - 2 * C_RE,
+                (zI - zR) / 2 - 2 * C_IM);
+        assertStep("-z^-2", zR, zI, -(zR * zR - zI * zI) / (norm * norm),
+                2 * zR * zI / (norm * norm));
+        assertStep("2.5e-1 * z + .5", zR, zI, 0.25 * zR + 0.5, 0.25 * zI);
+    }
+
+    @Test
+    void compilesFunctions() {
+        double zR = 0.7, zI = -0.4, norm = zR * zR + zI * zI;
+        double magnitude = Math.pow(norm, 1.25), angle = Math.atan2(zI, zR) * 2.5;
+        assertStep("z^2.5 + c", zR, zI, magnitude * Math.cos(angle) + C_RE,
+                magnitude * Math.sin(angle) + C_IM);
+        assertStep("exp(z)", zR, zI, Math.exp(zR) * Math.cos(zI), Math.exp(zR) * Math.sin(zI));
+        assertStep("log(z)", zR, zI, Math.log(norm) / 2, Math.atan2(zI, zR));
+        assertStep("exp(2 * log(z))", zR, zI, zR * zR - zI * zI, 2 * zR * zI);
+        assertStep("sqrt(z)^2", zR, zI, zR, zI);
+        assertStep("sin(z)", zR, zI, Math.sin(zR) * Math.cosh(zI), Math.cos(zR) * Math.sinh(zI));
+        assertStep("cos(z)", zR, zI, Math.cos(zR) * Math.cosh(zI), -Math.sin(zR) * Math.sinh(zI));
+        assertStep("abs(z) + arg(z)*i", zR, zI, Math.sqrt(norm), Math.atan2(zI, zR));
+        assertStep("pi * z", zR, zI, Math.PI * zR, Math.PI * zI);
+    }
+
+    @Test
+    void takesZerosAsExact() {
+        assertStep("exp(2 * log(z))", 0, 0, 0, 0);
+    }
+
+    @Test
+    void stopsOnceEscapedAndCarriesOn() {
+        Formula formula = Formula.compile("z^2 + c");
+        double[] z = {0, 0}, points = new double[20];
+        // c = 1 runs 1, 2, 5, 26, 677, 458330, so escapes past 10 at the fourth step.
+        assertEquals(-4, formula.orbit(z, 1, 0, points, 10, 100));
+        assertArrayEquals(new double[]{1, 0, 2, 0, 5, 0, 26, 0}, Arrays.copyOf(points, 8));
+        assertArrayEquals(new double[]{26, 0}, z);
+        z = new double[]{0, 0};
+        assertEquals(2, formula.orbit(z, 1, 0, points, 2, 1e6));
+        assertArrayEquals(new double[]{2, 0}, z);
+        assertEquals(-4, formula.orbit(z, 1, 0, points, 10, 1e6));
+        assertArrayEquals(new double[]{5, 0, 26, 0, 677, 0, 458330, 0}, Arrays.copyOf(points, 8));
+    }
+
+    @Test
+    void reportsWhereAFormulaIsWrong() {
+        assertMessage("unknown function 'foo' at position 3 of 'z*foo(z)'", "z*foo(z)");
+        assertMessage("unexpected ')' at position 5 of 'z + )'", "z + )");
+        assertMessage("unexpected end at position 4 of 'z +'", "z +");
+        assertMessage("expected ')' at position 5 of '(z^2'", "(z^2");
+        assertMessage("malformed number at position 1 of '1.2.3'", "1.2.3");
+        assertMessage("unexpected 'c' at position 3 of 'z c'", "z c");
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> Formula.compile("z^z"))
+                .getMessage().startsWith("exponents must be constant"));
+    }
+
+    private static void assertMessage(String message, String source) {
+        assertEquals(message, assertThrows(IllegalArgumentException.class,
+                () -> Formula.compile(source)).getMessage());
+    }
+
+    @Test
+    void refusesFormulasTooLongToCompile() {
+        // Each sin(z) takes about 100 bytes of code.
+        String tooLong = "z" + " + sin(z)".repeat(1000);
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> Formula.compile(tooLong))
+                .getMessage().startsWith("formula too long to compile"));
+        String tooDeep = "(".repeat(100000) + "z" + ")".repeat(100000);
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> Formula.compile(tooDeep))
+                .getMessage().startsWith("formula nested too deeply"));
+        InvalidParameterException ex = assertThrows(InvalidParameterException.class,
+                () -> new BBrot.Factory().compile(Map.of("formula", tooLong)));
+        assertEquals("formula", ex.getParameter());
+        // Just within the limits.
+        Formula.compile("z" + " + sin(z)".repeat(250));
+        Formula.compile("(".repeat(200) + "z" + ")".repeat(200));
+    }
+
+    @Test
+    void keepsTheFormulasLastCompiled() {
+        Formula formula = Formula.compile("z^2 + c");
+        assertSame(formula, Formula.compile(" z^2 + c "));
+        for (int n = 0; n < Formula.MAX_COMPILED; n++) {
+            Formula.compile("z^2 + " + n + "*c");
+        }
+        Formula again = Formula.compile("z^2 + c");
+        assertNotSame(formula, again);
+        assertEquals(formula, again);
+    }
+}
@@ -0,0 +1,37 @@
+package site.bsws.neb.alg;
+
+import java.awt.Dimension;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class HistogramsTest {
+
+    @Test
+    void takesBackAHistogramGivenZeroed() {
+        Dimension size = new Dimension(5, 3);
+        int[][] given = Histograms.take(size);
+        given[4][2] = 11;
+        Histograms.give(given);
+        int[][] taken = Histograms.take(size);
+        assertSame(given, taken);
+        for (int[] column : taken) {
+            assertArrayEquals(new int[3], column);
+        }
+    }
+
+    @Test
+    void takesANewHistogramOfAnotherSize() {
+        int[][] given = Histograms.take(new Dimension(5, 3));
+        Histograms.give(given);
+        int[][] taken = Histograms.take(new Dimension(3, 5));
+        assertNotSame(given, taken);
+        assertEquals(3, taken.length);
+        assertEquals(5, taken[0].length);
+    }
+}
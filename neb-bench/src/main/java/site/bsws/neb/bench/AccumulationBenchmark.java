@@ -0,0 +1,106 @@
+package site.bsws.neb.bench;
+
+import site.bsws.neb.alg.Accumulator;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferUShort;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Histogram accumulation in isolation: increments at the pixel indices of orbit points, reported
+ * in orbit points per second, either applied at once or binned by block of the buffer (see
+ * {@link Accumulator}). The points are either uniformly random or taken from Buddhabrot orbits in
+ * the default view; there are enough of them that they do not stay cached between invocations.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AccumulationBenchmark {
+
+    static final int POINT_COUNT = 1 << 22;
+
+    @Param({"640", "2048", "8192"})
+    public int size;
+
+    @Param({"direct", "binned"})
+    public String mode;
+
+    @Param({"random", "orbit"})
+    public String points;
+
+    private DataBuffer buffer;
+    private Accumulator accumulator;
+    private int[] indices;
+
+    @Setup
+    public void setUp() {
+        buffer = new DataBufferUShort(size * size, 1);
+        accumulator = mode.equals("binned") ? Accumulator.binned(buffer)
+                : Accumulator.direct(buffer);
+        indices = new int[POINT_COUNT];
+        Random random = new Random(42);
+        if (points.equals("random")) {
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = random.nextInt(size * size);
+            }
+        } else {
+            traceOrbits(random);
+        }
+    }
+
+    // Fills #indices with the in-view points of escaping orbits of z^2 + c, as BBrot plots them.
+    private void traceOrbits(Random random) {
+        int count = 0;
+        while (count < indices.length) {
+            double cR = -2 + 3 * random.nextDouble(), cI = -1.5 + 3 * random.nextDouble();
+            double zR = cR, zI = cI, p;
+            int j;
+            for (j = 0; j < 500 && zR * zR + zI * zI <= 4; j++) {
+                p = zR;
+                zR = zR * zR - zI * zI + cR;
+                zI = 2 * p * zI + cI;
+            }
+            if (j == 500) {
+                continue;
+            }
+            zR = cR;
+            zI = cI;
+            for (j = 0; j < 500 && count < indices.length && zR * zR + zI * zI <= 4; j++) {
+                int x = (int) ((zR + 2) / 3 * size), y = (int) ((zI + 1.5) / 3 * size);
+                if (x >= 0 && x < size && y >= 0 && y < size) {
+                    indices[count++] = y * size + x;
+                }
+                p = zR;
+                zR = zR * zR - zI * zI + cR;
+                zI = 2 * p * zI + cI;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public DataBuffer accumulate() {
+        for (int index : indices) {
+            accumulator.add(index);
+        }
+        accumulator.flush();
+        return buffer;
+    }
+}
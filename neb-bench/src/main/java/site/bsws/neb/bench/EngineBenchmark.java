@@ -0,0 +1,130 @@
+package site.bsws.neb.bench;
+
+import site.bsws.neb.Engine;
+import site.bsws.neb.alg.InvalidParameterException;
+import java.awt.Dimension;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end time of {@link Engine#render()} for a fixed sample size, from submission to
+ * completion, at varying worker counts, for both kinds of worker thread and both placements of
+ * negatives. Pass
+ * {@code -p threads=...} to go beyond the defaults on larger machines, and
+ * {@code -p autotuning=true} to compare with what the engine's tuner picks. Each render replaces
+ * the last at the same size, so with {@code -prof gc}, {@code gc.alloc.rate.norm} is what a render
+ * allocates once the engine reuses its negatives, e.g. at {@code -p rasterSize=4096}.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"1000000"})
+    public int sampleSize;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public Engine.WorkerType workerType;
+
+    @Param({"SHARED", "LOCAL"})
+    public Engine.Placement placement;
+
+    @Param({"false"})
+    public boolean autotuning;
+
+    @Param({"640"})
+    public int rasterSize; // Square.
+
+    private Engine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InvalidParameterException {
+        engine = new Engine(new Listener(), threads, workerType, placement);
+        engine.setAutotuning(autotuning);
+        engine.setRasterSize(new Dimension(rasterSize, rasterSize));
+        engine.setAlgorithm("bbrot");
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("sample_size", Integer.toString(sampleSize));
+        engine.setParameters(parameters);
+        engine.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.stop();
+    }
+
+    @Benchmark
+    public Engine.Positive render() throws InterruptedException, ExecutionException {
+        return engine.render().getResult().get();
+    }
+
+    private class Listener implements Engine.Listener {
+
+        @Override
+        public void renderingBegun() {
+        }
+
+        @Override
+        public void negativeRendered() {
+        }
+
+        @Override
+        public void renderingPaused() {
+        }
+
+        @Override
+        public void renderingResumed() {
+        }
+
+        @Override
+        public void renderingEnded() {
+        }
+
+        @Override
+        public void renderingCancelled() {
+        }
+
+        @Override
+        public void errorOccurred() {
+        }
+
+        @Override
+        public void algorithmSet(LinkedHashMap<String, String> newParameters) {
+        }
+
+        @Override
+        public void parametersSet() {
+        }
+
+        @Override
+        public void parametersReset(LinkedHashMap<String, String> newParameters) {
+        }
+
+        @Override
+        public void log(String message) {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package site.bsws.neb.bench;
+
+import site.bsws.neb.Engine;
+import site.bsws.neb.alg.BBrot;
+import site.bsws.neb.alg.InvalidParameterException;
+import java.awt.Dimension;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the orbit kernel, i.e. a single {@link BBrot#run} call, in samples per second, in
+ * double and single precision, and of the same iteration given as a compiled formula.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrbitBenchmark {
+
+    // Must match BBrot.TASK_SAMPLE_SIZE.
+    static final int SAMPLES_PER_RUN = 100;
+
+    @Param({"2", "3", "4"})
+    public int degree;
+
+    @Param({"100", "500", "5000"})
+    public int iterationLimit;
+
+    @Param({"double", "single"})
+    public String precision;
+
+    // "formula" runs z^(2^(degree - 1)) + c, the built-in iteration, as a formula (in double).
+    @Param({"builtin", "formula"})
+    public String kernel;
+
+    private BBrot algorithm;
+    private Engine.Negative negative;
+
+    @Setup
+    public void setUp() throws InvalidParameterException {
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("degree", Integer.toString(degree));
+        parameters.put("iteration_limit", Integer.toString(iterationLimit));
+        parameters.put("precision", precision);
+        if (kernel.equals("formula")) {
+            parameters.put("formula", "z^" + (1 << (degree - 1)) + " + c");
+        }
+        algorithm = new BBrot(new BBrot.Factory().compile(parameters));
+        Dimension size = new Dimension(640, 640);
+        negative = new Engine.Negative(algorithm.createNegativeBuffer(size), size);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES_PER_RUN)
+    public Engine.Negative run() {
+        algorithm.run(negative);
+        return negative;
+    }
+}
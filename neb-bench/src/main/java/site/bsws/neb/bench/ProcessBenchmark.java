@@ -0,0 +1,64 @@
+package site.bsws.neb.bench;
+
+import site.bsws.neb.Engine;
+import site.bsws.neb.alg.BBrot;
+import site.bsws.neb.alg.InvalidParameterException;
+import java.awt.Dimension;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of reducing a set of negatives into a positive with {@link BBrot#process}.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ProcessBenchmark {
+
+    @Param({"640", "2048"})
+    public int size;
+
+    @Param({"1", "4", "16"})
+    public int negativeCount;
+
+    private BBrot algorithm;
+    private Engine.Negative[] negatives;
+    private Engine.Positive positive;
+
+    @Setup
+    public void setUp() throws InvalidParameterException {
+        algorithm = new BBrot(new BBrot.Factory().compile(BBrot.SCHEMA.getDefaults()));
+        Dimension rasterSize = new Dimension(size, size);
+        negatives = new Engine.Negative[negativeCount];
+        Random random = new Random(42);
+        for (int i = 0; i < negatives.length; i++) {
+            negatives[i] = new Engine.Negative(algorithm.createNegativeBuffer(rasterSize), rasterSize);
+            for (int j = 0; j < size * size; j++) {
+                negatives[i].buffer.setElem(j, random.nextInt(64));
+            }
+        }
+        positive = new Engine.Positive(rasterSize);
+    }
+
+    @Benchmark
+    public Engine.Positive process() {
+        algorithm.process(negatives, positive);
+        return positive;
+    }
+}
@@ -0,0 +1,31 @@
+package site.bsws.neb.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Accepts the usual JMH command line, but unless told otherwise
+ * writes its results as JSON to {@value #DEFAULT_RESULT_FILE} so runs can be compared over time.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public class Runner {
+
+    public static final String DEFAULT_RESULT_FILE = "neb-bench-result.json";
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        new org.openjdk.jmh.runner.Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,272 @@
+package site.bsws.neb.cli;
+
+import site.bsws.neb.Animation;
+import site.bsws.neb.BandWriter;
+import site.bsws.neb.Engine;
+import site.bsws.neb.PngWriter;
+import site.bsws.neb.alg.InvalidParameterException;
+import java.awt.Dimension;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a single image without a UI.
+ *
+ * <pre>
+ * java -jar neb-cli.jar [-a algorithm] [-s WIDTHxHEIGHT] [-o output.png] [-t threads]
+ *         [-w platform|virtual] [-p shared|local] [-b seconds] [-n noise] [-T] [-m MiB]
+ *         [-d 8|16] [-v] [name=value ...] [@FRAME name=value ...]
+ * </pre>
+ *
+ * Parameters not given keep the algorithm's defaults; all are validated before rendering starts,
+ * and the options, with the output's format and depth, before the engine is set up.
+ * A single image renders for {@code -b} seconds instead of for the algorithm's samples if given,
+ * and stops early once its estimated noise (relative to full scale, e.g. {@code 0.002}) is within
+ * {@code -n}; see {@link Engine#setStopping}. {@code -T} tunes how many of the threads sample, and
+ * how, to the machine; see {@link Engine#setAutotuning}. {@code -m} sets the memory budget of a
+ * render, and renders that cannot be fitted in it are refused; see {@link Engine#setMemoryBudget}.
+ * Each {@code @FRAME} starts a keyframe of an {@link Animation}; its frames are then written to
+ * {@code String.format(output, frame)}, {@code neb-%04d.png} by default. Single images of more
+ * than 2^26 pixels (e.g. 8192x8192) are developed and encoded a band of rows at a time, so that
+ * they need memory for little more than the negatives; see
+ * {@link Engine#render(int, Engine.TileHandler)}. Single images written to {@code .tif},
+ * {@code .tiff} or {@code .pfm}, or to {@code .png} with {@code -d 16}, are exported at 16 bits a
+ * sample, or as floats for {@code .pfm}, the same way; see {@link BandWriter}.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public class Cli implements Engine.Listener {
+
+    private static final long TILED_PIXELS = 1 << 26;
+    // Of a band of a tiled image, about 4 MiB of positive.
+    private static final int TILE_PIXELS = 1 << 20;
+    private final boolean verbose;
+
+    private Cli(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String algorithm = "bbrot", output = null;
+        Dimension rasterSize = new Dimension(640, 640);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        Engine.WorkerType workerType = Engine.WorkerType.PLATFORM;
+        Engine.Placement placement = Engine.Placement.SHARED;
+        Duration timeBudget = null;
+        double noiseTarget = 0;
+        long memoryBudget = 0;
+        int depth = 8;
+        boolean autotuning = false, verbose = false;
+        // Parameters given before any @FRAME belong to frame 0.
+        TreeMap<Integer, LinkedHashMap<String, String>> keyframes = new TreeMap<>();
+        LinkedHashMap<String, String> keyframe = new LinkedHashMap<>();
+        keyframes.put(0, keyframe);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-a":
+                    algorithm = args[++i];
+                    break;
+                case "-s":
+                    String[] size = args[++i].split("x");
+                    rasterSize = new Dimension(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+                    break;
+                case "-o":
+                    output = args[++i];
+                    break;
+                case "-t":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-w":
+                    workerType = Engine.WorkerType.valueOf(args[++i].toUpperCase());
+                    break;
+                case "-p":
+                    placement = Engine.Placement.valueOf(args[++i].toUpperCase());
+                    break;
+                case "-b":
+                    timeBudget = Duration.ofMillis(Math.round(Double.parseDouble(args[++i]) * 1000));
+                    break;
+                case "-n":
+                    noiseTarget = Double.parseDouble(args[++i]);
+                    break;
+                case "-T":
+                    autotuning = true;
+                    break;
+                case "-m":
+                    memoryBudget = Long.parseLong(args[++i]) << 20;
+                    break;
+                case "-d":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-v":
+                    verbose = true;
+                    break;
+                default:
+                    if (args[i].startsWith("@")) {
+                        int frame = Integer.parseInt(args[i].substring(1));
+                        keyframe = keyframes.get(frame);
+                        if (keyframe == null) {
+                            keyframes.put(frame, keyframe = new LinkedHashMap<>());
+                        }
+                        break;
+                    }
+                    int separator = args[i].indexOf('=');
+                    if (separator < 0) {
+                        usage("Unrecognised argument: " + args[i]);
+                        return;
+                    }
+                    keyframe.put(args[i].substring(0, separator), args[i].substring(separator + 1));
+            }
+        }
+        File file = new File(output == null ? "neb.png" : output);
+        // Single images go through a BandWriter if not 8-bit PNG; frames are always 8-bit PNG.
+        if (depth != 8 && depth != 16) {
+            usage("Unsupported depth: " + depth + ", only 8 or 16");
+            return;
+        } else if (keyframes.size() == 1 && !BandWriter.isSupported(file.toPath())) {
+            usage("Cannot write " + file + ", only .png, .tif, .tiff or .pfm");
+            return;
+        } else if (keyframes.size() > 1 && (depth != 8 || output != null
+                && !output.toLowerCase(Locale.ROOT).endsWith(".png"))) {
+            usage("Frames are written to .png at 8 bits only");
+            return;
+        }
+
+        Engine engine = new Engine(new Cli(verbose), threadCount, workerType, placement);
+        engine.setRasterSize(rasterSize);
+        engine.setStopping(timeBudget, noiseTarget);
+        engine.setAutotuning(autotuning);
+        engine.setMemoryBudget(memoryBudget);
+        engine.setAlgorithm(algorithm);
+        engine.start();
+        try {
+            if (keyframes.size() == 1 && (depth > 8
+                    || !file.getName().toLowerCase(Locale.ROOT).endsWith(".png"))) {
+                engine.setParameters(keyframes.get(0));
+                try (BandWriter writer = BandWriter.open(file.toPath(), rasterSize)) {
+                    engine.render(Math.max(TILE_PIXELS / rasterSize.width, 1), writer).getResult()
+                            .get();
+                }
+            } else if (keyframes.size() == 1 && (long) rasterSize.width * rasterSize.height
+                    > TILED_PIXELS) {
+                engine.setParameters(keyframes.get(0));
+                try (PngWriter writer = new PngWriter(new BufferedOutputStream(
+                        new FileOutputStream(file)), rasterSize)) {
+                    engine.render(Math.max(TILE_PIXELS / rasterSize.width, 1), writer).getResult()
+                            .get();
+                }
+            } else if (keyframes.size() == 1) {
+                engine.setParameters(keyframes.get(0));
+                Engine.Positive positive = engine.render().getResult().get();
+                ImageIO.write(positive, "png", file);
+            } else {
+                Animation animation = new Animation(engine.getParameterSchema());
+                for (Map.Entry<Integer, LinkedHashMap<String, String>> entry
+                        : keyframes.entrySet()) {
+                    animation.addKeyframe(entry.getKey(), entry.getValue());
+                }
+                FrameWriter writer = new FrameWriter(output == null ? "neb-%04d.png" : output);
+                engine.render(animation.getFrames(), writer).getResult().get();
+                if (writer.failure != null) {
+                    throw writer.failure;
+                }
+            }
+        } catch (InvalidParameterException | IllegalArgumentException ex) {
+            usage(ex.getMessage());
+        } catch (ExecutionException ex) {
+            System.err.println("Rendering failed: " + ex.getCause());
+            System.exit(1);
+        } catch (IllegalStateException ex) { // Refused for want of memory.
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        } finally {
+            engine.stop();
+        }
+    }
+
+    /*
+     Encodes frames as they are handed over, on the worker that finished them, so encoding overlaps
+     the sampling of later frames.
+     */
+    private static class FrameWriter implements Engine.FrameHandler {
+
+        private final String pattern;
+        private volatile IOException failure;
+
+        FrameWriter(String pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void frameRendered(int frame, Engine.Positive positive) {
+            try {
+                ImageIO.write(positive, "png", new File(String.format(pattern, frame)));
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: neb [-a algorithm] [-s WIDTHxHEIGHT] [-o output.png] "
+                + "[-t threads] [-w platform|virtual] [-p shared|local] [-b seconds] [-n noise] "
+                + "[-T] [-m MiB] [-d 8|16] [-v] [name=value ...] [@FRAME name=value ...]");
+        System.exit(2);
+    }
+
+    @Override
+    public void renderingBegun() {
+    }
+
+    @Override
+    public void negativeRendered() {
+    }
+
+    @Override
+    public void renderingPaused() {
+    }
+
+    @Override
+    public void renderingResumed() {
+    }
+
+    @Override
+    public void renderingEnded() {
+    }
+
+    @Override
+    public void renderingCancelled() {
+    }
+
+    @Override
+    public void errorOccurred() {
+    }
+
+    @Override
+    public void algorithmSet(LinkedHashMap<String, String> newParameters) {
+    }
+
+    @Override
+    public void parametersSet() {
+    }
+
+    @Override
+    public void parametersReset(LinkedHashMap<String, String> newParameters) {
+    }
+
+    @Override
+    public void log(String message) {
+        if (verbose) {
+            System.err.println(message);
+        }
+    }
+}
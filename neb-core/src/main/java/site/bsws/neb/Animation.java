@@ -0,0 +1,102 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.InvalidParameterException;
+import site.bsws.neb.alg.ParameterSchema;
+import site.bsws.neb.alg.ParameterSchema.Parameter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A parameter animation defined by keyframes. Each keyframe only needs to name the parameters that
+ * change; the rest carry over from the previous keyframe, or from the schema's defaults for the
+ * first one. Between keyframes, real and integer parameters are interpolated linearly, except
+ * {@code range_*} parameters, which are interpolated geometrically so that zooms proceed at a
+ * constant rate. Choices switch at the keyframe.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public class Animation {
+
+    private final ParameterSchema schema;
+    private final TreeMap<Integer, LinkedHashMap<String, String>> keyframes = new TreeMap<>();
+
+    public Animation(ParameterSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Sets (or amends) the keyframe at {@code frame}, validating the values against the schema.
+     */
+    public void addKeyframe(int frame, Map<String, String> parameters)
+            throws InvalidParameterException {
+        if (frame < 0) {
+            throw new IllegalArgumentException("Negative frame: " + frame);
+        }
+        schema.compile(parameters);
+        LinkedHashMap<String, String> keyframe = keyframes.get(frame);
+        if (keyframe == null) {
+            keyframes.put(frame, keyframe = new LinkedHashMap<>());
+        }
+        keyframe.putAll(parameters);
+    }
+
+    public int getFrameCount() {
+        return keyframes.isEmpty() ? 0 : keyframes.lastKey() + 1;
+    }
+
+    /**
+     * @return the parameters of every frame, in order, as accepted by
+     * {@link Engine#render(List, Engine.FrameHandler)}.
+     */
+    public List<LinkedHashMap<String, String>> getFrames() {
+        // Resolve every keyframe to a full set of values first.
+        TreeMap<Integer, LinkedHashMap<String, String>> resolved = new TreeMap<>();
+        LinkedHashMap<String, String> values = schema.getDefaults();
+        for (Map.Entry<Integer, LinkedHashMap<String, String>> keyframe : keyframes.entrySet()) {
+            values = new LinkedHashMap<>(values);
+            values.putAll(keyframe.getValue());
+            resolved.put(keyframe.getKey(), values);
+        }
+
+        List<LinkedHashMap<String, String>> frames = new ArrayList<>(getFrameCount());
+        for (int frame = 0; frame < getFrameCount(); frame++) {
+            Map.Entry<Integer, LinkedHashMap<String, String>> from = resolved.floorEntry(frame);
+            Map.Entry<Integer, LinkedHashMap<String, String>> to = resolved.ceilingEntry(frame);
+            if (from == null) { // Before the first keyframe: hold it.
+                from = to;
+            }
+            if (from.getKey().equals(to.getKey())) {
+                frames.add(new LinkedHashMap<>(from.getValue()));
+                continue;
+            }
+            double t = (frame - from.getKey()) / (double) (to.getKey() - from.getKey());
+            LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+            for (Parameter parameter : schema.getParameters()) {
+                String a = from.getValue().get(parameter.name());
+                String b = to.getValue().get(parameter.name());
+                parameters.put(parameter.name(), interpolate(parameter, a, b, t));
+            }
+            frames.add(parameters);
+        }
+        return frames;
+    }
+
+    private static String interpolate(Parameter parameter, String a, String b, double t) {
+        switch (parameter.type()) {
+            case REAL:
+                double x = Double.parseDouble(a.trim()), y = Double.parseDouble(b.trim());
+                if (parameter.name().startsWith("range_") && x > 0 && y > 0) {
+                    return Double.toString(x * Math.pow(y / x, t));
+                }
+                return Double.toString(x + (y - x) * t);
+            case INTEGER:
+                long i = Long.parseLong(a.trim()), j = Long.parseLong(b.trim());
+                return Long.toString(Math.round(i + (j - i) * t));
+            default:
+                return a;
+        }
+    }
+}
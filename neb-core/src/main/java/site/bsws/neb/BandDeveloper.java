@@ -0,0 +1,65 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Algorithm;
+import java.awt.Dimension;
+
+/**
+ * Develops negatives a band of rows at a time, for renders handed over in tiles or bands rather
+ * than as a whole positive, and for exports. Algorithms that are
+ * {@linkplain Algorithm#isTileable() tileable} develop each band themselves, in memory in
+ * proportion to it; the rest develop the whole positive, which is then cut into bands.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class BandDeveloper {
+
+    /**
+     * Develops negatives into positives of {@code tileHeight} rows (the last may be shorter),
+     * handed to {@code handler} from the top.
+     */
+    static void develop(Algorithm developer, Engine.Negative[] negatives, int tileHeight,
+            Engine.TileHandler handler) {
+        if (developer.isTileable()) {
+            developer.process(negatives, tileHeight, handler);
+            return;
+        }
+        Dimension size = negatives[0].size;
+        Engine.Positive whole = new Engine.Positive(size);
+        developer.process(negatives, whole);
+        Engine.Positive tile = null;
+        for (int y = 0; y < size.height; y += tileHeight) {
+            int rows = Math.min(tileHeight, size.height - y);
+            if (tile == null || tile.getHeight() != rows) {
+                tile = new Engine.Positive(new Dimension(size.width, rows));
+            }
+            System.arraycopy(whole.buffer, y * size.width, tile.buffer, 0, rows * size.width);
+            handler.tileRendered(y, tile);
+        }
+    }
+
+    /**
+     * Develops negatives into bands of {@code tileHeight} rows, at full precision where the
+     * algorithm can, and otherwise from a positive.
+     */
+    static void develop(Algorithm developer, Engine.Negative[] negatives, int tileHeight,
+            Engine.BandHandler handler) {
+        if (developer.isTileable()) {
+            developer.develop(negatives, tileHeight, handler);
+            return;
+        }
+        Dimension size = negatives[0].size;
+        Engine.Positive whole = new Engine.Positive(size);
+        developer.process(negatives, whole);
+        for (int y = 0; y < size.height; y += tileHeight) {
+            Engine.Band band = new Engine.Band(y, size.width,
+                    Math.min(tileHeight, size.height - y));
+            for (int i = 0; i < band.width * band.height; i++) {
+                int pixel = whole.buffer[y * size.width + i];
+                band.samples[3 * i] = (pixel >> 16 & 0xff) / 255f;
+                band.samples[3 * i + 1] = (pixel >> 8 & 0xff) / 255f;
+                band.samples[3 * i + 2] = (pixel & 0xff) / 255f;
+            }
+            handler.bandDeveloped(band);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package site.bsws.neb;
+
+import java.awt.Dimension;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Exports the bands of an image developed at full precision (see
+ * {@link Engine#render(int, Engine.BandHandler)} and
+ * {@link Engine#export(int, Engine.BandHandler)}) to a file as they come, for grading in other
+ * tools: as a 16-bit PNG or TIFF, or as a PFM of 32-bit floats. Bands are encoded in parallel on an
+ * executor and written in order through a {@link FileChannel}; while {@link #MAX_PENDING_BANDS}
+ * are pending, the engine is held back, so that at most that many are held at a time, whatever the
+ * size of the image. The file is complete once its last band has been handed over. A failure to
+ * encode or write it is thrown from the next band handed over, or from {@link #close()}.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public abstract class BandWriter implements Engine.BandHandler, Closeable {
+
+    public static final int MAX_PENDING_BANDS = Math.min(
+            Runtime.getRuntime().availableProcessors() + 1, 16);
+    protected final FileChannel channel;
+    protected final Dimension size;
+    private final Executor executor;
+    private final Semaphore pending = new Semaphore(MAX_PENDING_BANDS);
+    // Completes once every band handed over so far has been written.
+    private volatile CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+    private int rowCount; // Handed over so far.
+
+    protected BandWriter(Path path, Dimension size, Executor executor) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.size = size;
+        this.executor = executor;
+    }
+
+    /**
+     * Opens a writer for a file of the format its name ends with: {@code .png}, {@code .tif} or
+     * {@code .tiff}, or {@code .pfm}.
+     *
+     * @throws IllegalArgumentException if the name ends with none of them.
+     */
+    public static BandWriter open(Path path, Dimension size, Executor executor)
+            throws IOException {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".png")) {
+            return new Png16Writer(path, size, executor);
+        } else if (name.endsWith(".tif") || name.endsWith(".tiff")) {
+            return new TiffWriter(path, size, executor);
+        } else if (name.endsWith(".pfm")) {
+            return new PfmWriter(path, size, executor);
+        }
+        throw new IllegalArgumentException("Cannot export to " + path
+                + ", only to .png, .tif, .tiff or .pfm");
+    }
+
+    /**
+     * @return whether {@link #open(Path, Dimension, Executor)} can export to the file, by its name.
+     */
+    public static boolean isSupported(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".png") || name.endsWith(".tif") || name.endsWith(".tiff")
+                || name.endsWith(".pfm");
+    }
+
+    /**
+     * As {@link #open(Path, Dimension, Executor)}, encoding on the common pool.
+     */
+    public static BandWriter open(Path path, Dimension size) throws IOException {
+        return open(path, size, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public void bandDeveloped(Engine.Band band) {
+        if (band.y != rowCount || band.width != size.width) {
+            throw new IllegalStateException(String.format("Expected rows of %d pixels from row %d,"
+                    + " not of %d from row %d", size.width, rowCount, band.width, band.y));
+        }
+        if (written.isCompletedExceptionally()) {
+            await();
+        }
+        pending.acquireUninterruptibly();
+        CompletableFuture<ByteBuffer[]> encoded = CompletableFuture.supplyAsync(
+                () -> encode(band), executor);
+        written = written.thenCombine(encoded, (ignored, buffers) -> {
+            try {
+                write(band, buffers);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return (Void) null;
+        }).whenComplete((ignored, ex) -> pending.release());
+        rowCount += band.height;
+        if (rowCount == size.height) {
+            await();
+            try {
+                finish();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Waits for the bands handed over to be written, and closes the file, leaving it incomplete if
+     * not all of them have been.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            await();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Called on the executor, for any number of bands at once.
+     *
+     * @return what {@link #write(Engine.Band, ByteBuffer[])} is to write of the band.
+     */
+    protected abstract ByteBuffer[] encode(Engine.Band band);
+
+    /**
+     * Called once the band, and those before it, have been encoded, for a band at a time, in
+     * order.
+     */
+    protected abstract void write(Engine.Band band, ByteBuffer[] encoded) throws IOException;
+
+    /**
+     * Called once all the bands have been written.
+     */
+    protected abstract void finish() throws IOException;
+
+    protected final boolean isLast(Engine.Band band) {
+        return band.y + band.height == size.height;
+    }
+
+    protected final void writeFully(ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private void await() {
+        try {
+            written.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,1440 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Algorithm;
+import site.bsws.neb.alg.AlgorithmFactory;
+import site.bsws.neb.alg.InvalidParameterException;
+import site.bsws.neb.alg.ParameterSchema;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @author Arindam Biswas <arindam dot b at ftml dot net>
+ */
+public class Engine {
+    // TODO: Add safeguards.
+
+    public static class Positive extends BufferedImage {
+
+        public int[] buffer;
+
+        public Positive(Dimension rasterSize) {
+            super(rasterSize.width, rasterSize.height, BufferedImage.TYPE_INT_ARGB);
+            buffer = ((DataBufferInt) this.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /*
+     Each thread works on a single 'negative'. A negative is an object whose contents may
+     vary depending on the algorithm. Multiple negatives are combined to obtain a 'positive',
+     i.e. the final image.
+     */
+    public static class Negative {
+
+        // #buffer holds the output of the thread this negative is assigned to.
+        public DataBuffer buffer;
+        public Dimension size;
+        // #data holds any other data that the algorithm might need. It goes along with the
+        // buffer when the engine reuses it for a later render of the same shape, whatever the
+        // algorithm and its parameters, so it may hold scratch space but nothing that depends
+        // on them.
+        public HashMap<String, Object> data;
+        // #tuning is how the algorithm is to sample the negative next, if the render is tuned.
+        public Tuning tuning;
+
+        public Negative(DataBuffer buffer, Dimension size) {
+            this.buffer = buffer;
+            this.size = size;
+            data = new HashMap<>();
+        }
+    }
+
+    /**
+     * How a render is carried out, as chosen by the engine's tuner (see
+     * {@link #setAutotuning(boolean)}): how many workers sample it at once, how many samples each
+     * call of {@link Algorithm#run(Negative)} takes, as a multiple of the algorithm's default
+     * batch, and how they are accumulated, one of {@link Algorithm#getAccumulationModes()}.
+     */
+    public record Tuning(int workers, int batchScale, String accumulation) {
+
+        @Override
+        public String toString() {
+            return String.format("%d worker%s, batches of %dx, %s accumulation", workers,
+                    workers == 1 ? "" : "s", batchScale, accumulation);
+        }
+    }
+
+    /**
+     * What a job's {@linkplain Job#getEvents(Duration, Executor) publisher} hands its subscribers.
+     */
+    public sealed interface Event permits Progress, Preview {
+    }
+
+    /**
+     * How far a job has got, as by {@link Job#getProgress()}, and its noise as last estimated,
+     * NaN if it has no noise target.
+     */
+    public record Progress(double progress, double noise) implements Event {
+    }
+
+    /**
+     * A job's image so far, developed from the render in progress (for a sequence, from its newest
+     * frame), or its result, once it has completed. A preview in progress belongs to the
+     * subscribers; the result is the job's.
+     */
+    public record Preview(Positive positive, double progress) implements Event {
+    }
+
+    public enum WorkerType {
+        PLATFORM, VIRTUAL
+    }
+
+    /**
+     * How negatives are placed relative to the workers. With {@code SHARED}, any worker runs any
+     * task. With {@code LOCAL}, each negative has a home worker that allocates it (so that its
+     * pages are first touched, and with {@code -XX:+UseNUMA} allocated, on that worker's node),
+     * runs all its tasks, and merges finished negatives into it, so that a render reaches
+     * {@link Algorithm#process(Negative[], Positive)} as a single negative where the algorithm
+     * supports it. The JVM cannot pin threads itself; run it under {@code numactl} or
+     * {@code taskset} for that.
+     */
+    public enum Placement {
+        SHARED, LOCAL
+    }
+
+    void taskCompleted(Task task) {
+        Render render = task.render;
+        render.job.completedTaskCount.addAndGet(task.getBatchScale());
+        render.job.postProgress();
+        if (render.calibration != null) {
+            calibrate(render, task);
+        }
+        boolean carryOn = !isStopping(render);
+        List<Task> waiting = List.of();
+        synchronized (render) {
+            if (task.index >= render.activeCount) {
+                if (carryOn && render.calibration != null) {
+                    task.waiting = true; // Until a later trial takes more workers.
+                    return;
+                }
+                carryOn = false;
+            }
+            if (!carryOn && render.calibration != null) { // Out of samples or stopped early.
+                render.calibration = null;
+                waiting = render.takeWaitingTasks(Integer.MAX_VALUE);
+            }
+        }
+        if (carryOn && claim(task)) {
+            if (!render.job.isCancelled()) {
+                enqueue(task);
+            }
+            if (render.job.reported) {
+                listener.negativeRendered();
+            }
+        } else {
+            negativeFinished(task);
+            for (Task other : waiting) {
+                negativeFinished(other);
+            }
+        }
+    }
+
+    /*
+     Hands the task its next batch out of its render's unclaimed ones, at the render's current
+     tuning; the last batch may be smaller. Returns false if there are none left.
+     */
+    private boolean claim(Task task) {
+        Render render = task.render;
+        Tuning tuning = render.tuning;
+        int scale = tuning == null ? 1 : tuning.batchScale();
+        long unclaimed;
+        do {
+            unclaimed = render.unclaimed.get();
+            if (unclaimed <= 0) {
+                return false;
+            }
+        } while (!render.unclaimed.compareAndSet(unclaimed, unclaimed - Math.min(scale,
+                unclaimed)));
+        task.tuning = unclaimed >= scale ? tuning
+                : new Tuning(tuning.workers(), (int) unclaimed, tuning.accumulation());
+        return true;
+    }
+
+    /*
+     Feeds a task's timing to the render's calibration and, once that ends a trial, moves on to
+     the next one: negatives waiting for a worker are woken if it takes more of them, and once the
+     calibration is over, those still waiting are finished.
+     */
+    private void calibrate(Render render, Task task) {
+        Tuner.Calibration calibration = render.calibration;
+        if (calibration == null
+                || !calibration.taskCompleted(task.tuning, task.duration, System.nanoTime())) {
+            return;
+        }
+        Tuning next = calibration.getTrial();
+        boolean done = next == null;
+        if (done) {
+            next = calibration.getBest();
+        }
+        List<Task> woken, finished;
+        synchronized (render) {
+            if (render.calibration != calibration) {
+                return; // Abandoned meanwhile.
+            }
+            render.tuning = next;
+            render.activeCount = next.workers();
+            woken = render.takeWaitingTasks(next.workers());
+            if (done) {
+                render.calibration = null;
+                finished = render.takeWaitingTasks(Integer.MAX_VALUE);
+            } else {
+                finished = List.of();
+            }
+        }
+        if (done && render.job.reported) {
+            listener.log("Tuned to " + next + (calibration.isLearning() ? String.format(
+                    " (%.3g default batches/s)", calibration.getBestRate()) : ""));
+        }
+        for (Task other : woken) {
+            if (claim(other)) {
+                enqueue(other);
+            } else {
+                negativeFinished(other);
+            }
+        }
+        for (Task other : finished) {
+            negativeFinished(other);
+        }
+    }
+
+    private void negativeFinished(Task task) {
+        Render render = task.render;
+        int developed;
+        synchronized (render) {
+            developed = ++render.developedNegativeCount;
+        }
+        if (render.sequence != null) {
+            render.sequence.negativeDeveloped(render, developed);
+        }
+        Negative[] negatives;
+        if (render.mergeTree != null) {
+            Negative merged = render.mergeTree.add(task.negative);
+            negatives = merged == null ? null : new Negative[]{merged};
+        } else {
+            negatives = developed == render.negatives.length ? render.getLiveNegatives() : null;
+        }
+        if (negatives != null) {
+            if (render.sequence != null) {
+                render.sequence.frameSampled(render, negatives);
+            } else if (render.job.tileHandler != null || render.job.bandHandler != null) {
+                if (render.job.bandHandler != null) {
+                    BandDeveloper.develop(render.developer, negatives, render.job.tileHeight,
+                            render.job.bandHandler);
+                } else {
+                    BandDeveloper.develop(render.developer, negatives, render.job.tileHeight,
+                            render.job.tileHandler);
+                }
+                finished(render.job, null);
+            } else {
+                synchronized (positiveLock) {
+                    render.developer.process(negatives, render.job.positive);
+                }
+                releaseInherited(render);
+                finished(render.job, render.job.positive);
+            }
+        }
+    }
+
+    /**
+     * Develops the current render, finished or not, at full precision, a band of
+     * {@code tileHeight} rows at a time, into {@code handler}, on the calling thread; workers are
+     * held back meanwhile if it is still in progress. See {@link #render(int, BandHandler)}.
+     *
+     * @throws IllegalStateException if there is no render, or it is part of a sequence.
+     */
+    public synchronized void export(int tileHeight, BandHandler handler) {
+        Render render = current;
+        if (render == null || render.sequence != null) {
+            throw new IllegalStateException("No render to export");
+        }
+        boolean wasPaused = isPaused();
+        pause();
+        try {
+            Negative[] negatives = render.job.result.isDone() ? render.getLiveNegatives()
+                    : getPreviewNegatives(render);
+            if (negatives.length > 0) {
+                BandDeveloper.develop(render.developer, negatives, tileHeight, handler);
+            }
+        } finally {
+            if (!wasPaused) {
+                resume();
+            }
+        }
+    }
+
+    /*
+     Whether a render is to stop short of its samples: once its job's time budget is spent or
+     its estimated noise is within the target. Noise is estimated on one worker at a time, at most
+     every NOISE_CHECK_INTERVAL.
+     */
+    private boolean isStopping(Render render) {
+        Job job = render.job;
+        if (job.stopping) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (job.timeBudget > 0 && now - job.start >= job.timeBudget) {
+            stop(job, "Time budget spent");
+        } else if (job.noiseTarget > 0) {
+            long check = job.nextNoiseCheck.get();
+            if (now - check >= 0 && job.nextNoiseCheck.compareAndSet(check,
+                    now + NOISE_CHECK_INTERVAL)) {
+                double noise = render.developer.estimateNoise(render.getLiveNegatives());
+                job.noise = noise;
+                if (noise <= job.noiseTarget) {
+                    stop(job, String.format("Noise %.3g within target", noise));
+                }
+            }
+        }
+        return job.stopping;
+    }
+
+    private void stop(Job job, String reason) {
+        synchronized (job) {
+            if (job.stopping) {
+                return;
+            }
+            job.stopping = true;
+        }
+        if (job.reported) {
+            listener.log(String.format("%s after %d batches, stopping", reason,
+                    job.completedTaskCount.get()));
+        }
+    }
+
+    private void finished(Job job, Positive result) {
+        if (job.result.complete(result)) {
+            if (job == currentJob) {
+                renderInProgress = false;
+            }
+            if (job.reported) {
+                listener.renderingEnded();
+            }
+        }
+    }
+
+    private void failed(Job job, Throwable cause) {
+        job.cancelled = true;
+        removeTasks(job);
+        if (job.result.completeExceptionally(cause)) {
+            if (job == currentJob) {
+                renderInProgress = false;
+            }
+            Logger.getLogger(Engine.class.getName()).log(Level.SEVERE, null, cause);
+            if (job.reported) {
+                listener.log("Rendering failed: " + cause);
+                listener.errorOccurred();
+            }
+        }
+    }
+
+    /**
+     * A submitted render or sequence. Its result completes with the positive (the last frame's,
+     * for a sequence, and null for a tiled render), exceptionally if the algorithm fails, or is
+     * cancelled.
+     * <p>
+     * Jobs share the workers: tasks of a higher priority job always run first, and jobs of equal
+     * priority take turns, one task at a time. Only jobs started with {@code render()} report to
+     * the engine's {@link Listener}.
+     */
+    public final class Job {
+
+        private final CompletableFuture<Positive> result = new CompletableFuture<>();
+        private final int priority;
+        private final Positive positive;
+        private final boolean reported;
+        private final AtomicLong completedTaskCount = new AtomicLong();
+        private volatile long taskCount;
+        private volatile boolean cancelled;
+        // Stopping criteria, for single renders; see setStopping(). Times are System.nanoTime().
+        private final long start = System.nanoTime();
+        private long timeBudget; // 0 for none.
+        private double noiseTarget; // 0 for none.
+        private final AtomicLong nextNoiseCheck = new AtomicLong(start + NOISE_CHECK_INTERVAL);
+        private volatile double noise = Double.NaN; // As last estimated.
+        private volatile boolean stopping;
+        private volatile Render render; // The newest.
+        private final List<EventPublisher> publishers = new CopyOnWriteArrayList<>();
+        private final AtomicLong nextProgressEvent = new AtomicLong(start);
+        // Of a tiled render, which has no positive; see render(int, TileHandler).
+        private TileHandler tileHandler;
+        private BandHandler bandHandler;
+        private int tileHeight;
+
+        private Job(int priority, Positive positive, boolean reported) {
+            this.priority = priority;
+            this.positive = positive;
+            this.reported = reported;
+        }
+
+        /**
+         * Publishes the job's {@link Event}s without ever holding up its workers: {@link Progress}
+         * at most every {@value Engine#PROGRESS_INTERVAL_MILLIS} ms while it runs, and a new
+         * {@link Preview} whenever a subscriber asks for an event and the last one is at
+         * least {@code previewInterval} old; then, once the job completes, its final progress and
+         * its result as a preview, followed by {@code onComplete()}, or {@code onError()} with the
+         * cause if it failed or a {@link java.util.concurrent.CancellationException} if it was
+         * cancelled.
+         * <p>
+         * Each subscriber is signalled on {@code executor}, one signal at a time, as it asks.
+         * Events it has not asked for yet are conflated: it is handed only the latest of each
+         * kind. Previews are developed on {@code executor}, and only while some subscriber asks
+         * for events; the workers are held back just long enough to copy the negatives.
+         *
+         * @param previewInterval how often to develop previews, or null for none.
+         */
+        public Flow.Publisher<Event> getEvents(Duration previewInterval, Executor executor) {
+            EventPublisher publisher = new EventPublisher(executor,
+                    previewInterval == null ? 0 : Math.max(previewInterval.toNanos(), 1),
+                    () -> preview(this));
+            publishers.add(publisher);
+            result.whenComplete((positive, failure) -> {
+                if (failure == null) {
+                    publisher.post(new Progress(1, noise));
+                    if (positive != null) {
+                        publisher.post(new Preview(positive, 1));
+                    }
+                }
+                publisher.complete(failure);
+            });
+            return publisher;
+        }
+
+        /**
+         * As {@link #getEvents(Duration, Executor)}, signalling subscribers on the common pool.
+         */
+        public Flow.Publisher<Event> getEvents(Duration previewInterval) {
+            return getEvents(previewInterval, ForkJoinPool.commonPool());
+        }
+
+        // Posts the progress to the publishers, if any, at most every PROGRESS_INTERVAL.
+        private void postProgress() {
+            if (publishers.isEmpty()) {
+                return;
+            }
+            long now = System.nanoTime(), next = nextProgressEvent.get();
+            if (now - next >= 0 && nextProgressEvent.compareAndSet(next,
+                    now + TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS))) {
+                Progress progress = new Progress(getProgress(), noise);
+                for (EventPublisher publisher : publishers) {
+                    publisher.post(progress);
+                }
+            }
+        }
+
+        public CompletableFuture<Positive> getResult() {
+            return result;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return the fraction of the job's tasks done so far (for a sequence, of the frames
+         * started so far), of its time budget spent, if it has one, or at least the fraction of
+         * samples its noise target would take, as estimated from its noise so far.
+         */
+        public double getProgress() {
+            double progress = timeBudget > 0 ? (System.nanoTime() - start) / (double) timeBudget
+                    : getSampledFraction();
+            double noise = this.noise;
+            if (noiseTarget > 0 && noise > 0) { // Noise falls as the square root of the samples.
+                progress = Math.max(progress, (noiseTarget / noise) * (noiseTarget / noise));
+            }
+            return Math.min(1, progress);
+        }
+
+        // The tasks done relative to the nominal count, which they exceed on a time budget.
+        private double getSampledFraction() {
+            long count = taskCount;
+            return count == 0 ? 0 : completedTaskCount.get() / (double) count;
+        }
+
+        /**
+         * Cancels the job. Its queued tasks are discarded at once; tasks already running finish
+         * their current batch of samples, which takes milliseconds.
+         *
+         * @return false if the job had already completed.
+         */
+        public boolean cancel() {
+            if (result.isDone()) {
+                return false;
+            }
+            cancelled = true;
+            removeTasks(this);
+            if (!result.cancel(false)) {
+                return false;
+            }
+            if (this == currentJob) {
+                renderInProgress = false;
+            }
+            if (reported) {
+                listener.renderingCancelled();
+            }
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private class Task extends Scheduler.Task {
+
+        Render render;
+        Algorithm algorithm;
+        Negative negative;
+        int index; // Of the negative in the render.
+        Tuning tuning; // Of the batch claimed for the next run; null if the render is untuned.
+        long duration; // Of the last run, in nanoseconds.
+        boolean waiting; // For a worker, while its render is being calibrated.
+
+        Task(Render render, Negative negative, int index) {
+            this.render = render;
+            this.algorithm = render.algorithm;
+            this.negative = negative;
+            this.index = index;
+        }
+
+        @Override
+        int getPriority() {
+            return render.job.priority;
+        }
+
+        @Override
+        boolean isCancelled() {
+            return render.job.isCancelled();
+        }
+
+        @Override
+        void run() {
+            sample();
+            taskCompleted(this);
+        }
+
+        @Override
+        void failed(Throwable cause) {
+            Engine.this.failed(render.job, cause);
+        }
+
+        void sample() {
+            if (negative.buffer == null) { // Allocated by its home worker, if placement is LOCAL.
+                negative.buffer = algorithm.createNegativeBuffer(negative.size);
+            }
+            negative.tuning = tuning;
+            long start = System.nanoTime();
+            algorithm.run(negative);
+            duration = System.nanoTime() - start;
+        }
+
+        // The number of default batches the last run took.
+        int getBatchScale() {
+            return tuning == null ? 1 : tuning.batchScale();
+        }
+    }
+
+    /*
+     A render is one image in the making: the algorithm it runs, its negatives and how many of them
+     have been fully developed (and, if they are being merged, how far that has got). Each frame of
+     a sequence is a separate render, so that one frame can be processed while the next is already
+     being sampled. Each negative has one task, which claims the render's batches one at a time
+     until there are none left.
+     */
+    private class Render {
+
+        final Job job;
+        final Algorithm algorithm;
+        final Map<String, String> parameters; // Null for the frames of a sequence.
+        final Negative[] negatives;
+        final Task[] tasks;
+        // Batches of the algorithm's default size yet to be claimed; see claim().
+        final AtomicLong unclaimed = new AtomicLong();
+        volatile Tuning tuning; // Null if untuned.
+        // Set while the render is being calibrated; guarded by the render, as is #activeCount.
+        volatile Tuner.Calibration calibration;
+        // Negatives with an index of at least this many wait for, or finish after, their task.
+        int activeCount;
+        final Sequence sequence;
+        final int frame;
+        final MergeTree mergeTree; // Null unless its negatives are merged as they are developed.
+        final boolean shared; // Whether the negatives share one buffer.
+        int developedNegativeCount;
+        // The algorithm that processes the negatives; see develop().
+        volatile Algorithm developer;
+        // Samples carried over from the render this one replaced, for previews only, and those
+        // faded for the last preview.
+        volatile Negative inherited, faded;
+        boolean pooled; // Whether its negatives go back to the engine's pool once replaced.
+
+        Render(Job job, Algorithm algorithm, Map<String, String> parameters, Negative[] negatives,
+                Sequence sequence, int frame, boolean merging, boolean shared) {
+            this.job = job;
+            this.algorithm = developer = algorithm;
+            this.parameters = parameters;
+            this.negatives = negatives;
+            tasks = new Task[negatives.length];
+            activeCount = negatives.length;
+            this.sequence = sequence;
+            this.frame = frame;
+            mergeTree = merging ? new MergeTree(algorithm, negatives.length) : null;
+            this.shared = shared;
+        }
+
+        /*
+         The negatives holding samples so far; those not yet allocated, already merged into
+         another or given back to the pool have no buffer, and of those sharing one, only the
+         first counts.
+         */
+        synchronized Negative[] getLiveNegatives() {
+            if (shared) {
+                return negatives[0].buffer == null ? new Negative[0]
+                        : new Negative[]{negatives[0]};
+            }
+            List<Negative> live = new ArrayList<>(negatives.length);
+            for (Negative negative : negatives) {
+                if (negative.buffer != null) {
+                    live.add(negative);
+                }
+            }
+            return live.toArray(new Negative[0]);
+        }
+
+        // Those of the waiting tasks whose index is below #limit, no longer waiting.
+        synchronized List<Task> takeWaitingTasks(int limit) {
+            List<Task> taken = new ArrayList<>();
+            for (Task task : tasks) {
+                if (task != null && task.waiting && task.index < limit) {
+                    task.waiting = false;
+                    taken.add(task);
+                }
+            }
+            return taken;
+        }
+    }
+
+    /*
+     Frames of a sequence are pipelined: the next frame is started as soon as the newest one has
+     developed its first negative, i.e. as soon as some worker would otherwise run out of work, and
+     a frame is processed and handed to the FrameHandler by the worker that finishes it while the
+     others carry on sampling. At most two frames are sampled at once to bound memory (and
+     Algorithm.follow() relies on it).
+     */
+    private class Sequence {
+
+        static final int MAX_SAMPLING_FRAMES = 2;
+        final Job job;
+        final List<Algorithm> frames;
+        final List<MemoryPlanner.Plan> plans;
+        final FrameHandler handler;
+        int startedFrameCount, samplingFrameCount, handledFrameCount;
+        boolean newestFrameDeveloping;
+
+        Sequence(Job job, List<Algorithm> frames, List<MemoryPlanner.Plan> plans,
+                FrameHandler handler) {
+            this.job = job;
+            this.frames = frames;
+            this.plans = plans;
+            this.handler = handler;
+        }
+
+        synchronized void startNextFrame() {
+            if (startedFrameCount == frames.size() || job.isCancelled()) {
+                return;
+            }
+            current = startRender(job, frames.get(startedFrameCount), null, this,
+                    startedFrameCount, rasterSize, plans.get(startedFrameCount));
+            frames.set(startedFrameCount, null); // The render holds on to it from here.
+            startedFrameCount++;
+            samplingFrameCount++;
+            newestFrameDeveloping = false;
+        }
+
+        synchronized void negativeDeveloped(Render render, int developed) {
+            if (developed == 1 && render.frame == startedFrameCount - 1) {
+                newestFrameDeveloping = true;
+                if (samplingFrameCount < MAX_SAMPLING_FRAMES) {
+                    startNextFrame();
+                }
+            }
+        }
+
+        void frameSampled(Render render, Negative[] negatives) {
+            synchronized (this) {
+                samplingFrameCount--;
+                if (newestFrameDeveloping) {
+                    startNextFrame();
+                }
+            }
+            Positive framePositive = new Positive(negatives[0].size);
+            render.algorithm.process(negatives, framePositive);
+            if (render != current) { // Superseded, so nothing else reads its negatives.
+                release(render);
+            }
+            handler.frameRendered(render.frame, framePositive);
+            boolean last;
+            synchronized (this) {
+                last = ++handledFrameCount == frames.size();
+            }
+            if (last) {
+                finished(job, framePositive);
+            }
+        }
+    }
+
+    public static interface FrameHandler {
+
+        /**
+         * Called on a worker thread once a frame of a sequence has been processed. Frames may
+         * complete out of order and concurrently, and the positive belongs to the handler.
+         */
+        public void frameRendered(int frame, Positive positive);
+    }
+
+    public static interface TileHandler {
+
+        /**
+         * Called on a worker thread with each band of rows of a tiled render's image, in order from
+         * the top, {@code y} being the row the band starts at. The tile may be reused for the next
+         * band once this returns. A RuntimeException thrown here fails the job.
+         */
+        public void tileRendered(int y, Positive tile);
+    }
+
+    /**
+     * A band of rows of a developed image at full precision, for export: the linear red, green
+     * and blue values of each pixel, row by row from the top, relative to full scale, i.e. from 0
+     * to 1, where the positive has 0 to 255.
+     */
+    public static class Band {
+
+        public final int y, width, height; // Of the band's first row, and its size.
+        public final float[] samples;
+
+        public Band(int y, int width, int height) {
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            samples = new float[3 * width * height];
+        }
+    }
+
+    public static interface BandHandler {
+
+        /**
+         * Called with each band of an image, in order from the top, on a worker thread, or on
+         * the thread exporting it; the band belongs to the handler. Handlers may block to hold the
+         * engine back, e.g. while they encode bands handed over before. A RuntimeException thrown
+         * here fails the job.
+         */
+        public void bandDeveloped(Band band);
+    }
+
+    /**
+     * Called synchronously on the workers, so a slow listener holds up the render; consumers that
+     * may be slow should subscribe to {@link Job#getEvents(Duration, Executor)} instead.
+     */
+    public static interface Listener {
+
+        public void renderingBegun();
+
+        public void negativeRendered();
+
+        public void renderingPaused();
+
+        public void renderingResumed();
+
+        public void renderingEnded();
+
+        public void renderingCancelled();
+
+        public void errorOccurred();
+
+        public void algorithmSet(LinkedHashMap<String, String> newParameters);
+
+        public void parametersSet();
+
+        public void parametersReset(LinkedHashMap<String, String> newParameters);
+
+        public void log(String message);
+    }
+
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final long PROGRESS_INTERVAL_MILLIS = 100;
+    private static final long NOISE_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private Duration timeBudget; // Null for none.
+    private double noiseTarget; // 0 for none.
+    private final Tuner tuner = new Tuner();
+    private volatile boolean autotuning;
+    private long memoryBudget; // 0 for the default.
+    private Dimension rasterSize;
+    private volatile Render current;
+    private volatile Job currentJob;
+    private Positive positive;
+    // Negatives of replaced renders, for the next one.
+    private final NegativePool pool = new NegativePool();
+    private final PreviewCopies copies = new PreviewCopies();
+    private final Placement placement;
+    private final Scheduler<Task> scheduler;
+    private final Object positiveLock = new Object();
+    private AlgorithmFactory<?> algorithmFactory;
+    private Algorithm algorithm;
+    private Map<String, String> parameters; // Those #algorithm was created with.
+    private final Listener listener;
+    private volatile boolean renderInProgress;
+
+    public Engine(Listener listener) {
+        this(listener, Runtime.getRuntime().availableProcessors()); // One thread each.
+    }
+
+    public Engine(Listener listener, int threadCount) {
+        this(listener, threadCount, WorkerType.PLATFORM);
+    }
+
+    public Engine(Listener listener, int threadCount, WorkerType workerType) {
+        this(listener, threadCount, workerType, Placement.SHARED);
+    }
+
+    public Engine(Listener listener, int threadCount, WorkerType workerType,
+            Placement placement) {
+        this.placement = placement;
+        scheduler = new Scheduler<>(threadCount, placement == Placement.LOCAL,
+                workerType == WorkerType.VIRTUAL
+                ? Thread.ofVirtual().name("neb-worker-", 0).factory()
+                // Parked workers must not keep the VM alive.
+                : Thread.ofPlatform().name("neb-worker-", 0).daemon(true).factory());
+        rasterSize = new Dimension(640, 640); // Set the raster size to a default of 640x640.
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        scheduler.start();
+    }
+
+    /**
+     * Stops the workers and waits for them to exit. Jobs still in progress are cancelled. The
+     * engine can be started again afterwards.
+     */
+    public synchronized void stop() {
+        if (!scheduler.isStarted()) {
+            return;
+        }
+
+        cancel();
+        scheduler.stop();
+    }
+
+    /**
+     * Holds workers back from starting new tasks and waits until none is running. Called from a
+     * worker itself (e.g. by a listener), it does not wait for that worker.
+     */
+    public void pause() {
+        scheduler.pause();
+    }
+
+    public void resume() {
+        Render render = current;
+        Tuner.Calibration calibration = render == null ? null : render.calibration;
+        if (calibration != null) { // Nothing was sampled meanwhile.
+            calibration.leaveOut(scheduler.getPausedTime());
+        }
+        scheduler.resume();
+    }
+
+    public boolean isPaused() {
+        return scheduler.isPaused();
+    }
+
+    /**
+     * Cancels the current job, if any.
+     */
+    public void cancel() {
+        Job job = currentJob;
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    private static AlgorithmFactory<?> getAlgorithmFactory(String name) {
+        for (AlgorithmFactory<?> factory : ServiceLoader.load(AlgorithmFactory.class)) {
+            if (factory.getName().equals(name)) {
+                return factory;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown algorithm: " + name);
+    }
+
+    private static <P> Algorithm createAlgorithmInstance(AlgorithmFactory<P> factory,
+            Map<String, String> parameters) throws InvalidParameterException {
+        return factory.create(factory.compile(parameters));
+    }
+
+    private static Algorithm createDefaultAlgorithmInstance(AlgorithmFactory<?> factory) {
+        try {
+            return createAlgorithmInstance(factory, factory.getDefaultParameters());
+        } catch (InvalidParameterException ex) {
+            throw new IllegalStateException("Default parameters of " + factory.getName()
+                    + " are invalid", ex);
+        }
+    }
+
+    public void setRasterSize(Dimension rasterSize) {
+        this.rasterSize = rasterSize;
+        positive = null; // Until a render needs it, since tiled renders do without.
+    }
+
+    public void setAlgorithm(String name) {
+        algorithmFactory = getAlgorithmFactory(name);
+        LinkedHashMap<String, String> parameters = algorithmFactory.getDefaultParameters();
+        algorithm = createDefaultAlgorithmInstance(algorithmFactory);
+        this.parameters = parameters;
+
+        listener.algorithmSet(parameters);
+    }
+
+    public String getAlgorithm() {
+        return algorithm.toString();
+    }
+
+    /**
+     * Validates {@code parameters} against the current algorithm's schema and, if they are sound,
+     * makes them the parameters of the next render. On failure the previous parameters remain.
+     */
+    public void setParameters(Map<String, String> parameters) throws InvalidParameterException {
+        algorithm = createAlgorithmInstance(algorithmFactory, parameters);
+        this.parameters = new LinkedHashMap<>(parameters);
+
+        listener.parametersSet();
+    }
+
+    public void resetParameters() {
+        LinkedHashMap<String, String> parameters = algorithmFactory.getDefaultParameters();
+        algorithm = createDefaultAlgorithmInstance(algorithmFactory);
+        this.parameters = parameters;
+
+        listener.parametersReset(parameters);
+    }
+
+    /**
+     * Sets when renders started from now on stop; sequences are not affected. By default, renders
+     * stop once the algorithm has taken its samples. With a time budget, they run until it is
+     * spent instead, however many samples that takes. With a noise target, they stop as soon as
+     * {@link Algorithm#estimateNoise(Negative[])}, checked about once a second, is within it, and
+     * at the latest when the samples or the time budget run out.
+     *
+     * @param timeBudget the time budget, or null for none.
+     * @param noiseTarget the noise target, or 0 for none.
+     */
+    public void setStopping(Duration timeBudget, double noiseTarget) {
+        if (timeBudget != null && (timeBudget.isNegative() || timeBudget.isZero())
+                || !(noiseTarget >= 0)) {
+            throw new IllegalArgumentException("Time budgets and noise targets must be positive");
+        }
+        this.timeBudget = timeBudget;
+        this.noiseTarget = noiseTarget;
+    }
+
+    /**
+     * Sets whether renders of {@linkplain Algorithm#isTunable() tunable} algorithms are tuned to
+     * the machine, off by default. Renders started with {@link #render()} are then calibrated as
+     * they start: for a second or so, they try out how many of the workers to sample with, how many
+     * samples to take per task and how to accumulate them, carry on with whichever did the most
+     * samples a second, and log it. What the first calibration of an algorithm at a raster size
+     * finds is kept for later renders of it, which then only size their batches, and for sequences
+     * and submitted jobs, which are not calibrated. Samples taken while calibrating all count.
+     */
+    public void setAutotuning(boolean autotuning) {
+        this.autotuning = autotuning;
+    }
+
+    /**
+     * Sets how many bytes each render started from now on may take, or 0 for the default, three
+     * quarters of the maximum heap. Before a render allocates anything, what it needs is estimated
+     * from the raster size, the width of the algorithm's counters, the number of negatives and the
+     * buffers kept for previews; if that is over the budget, it takes fewer negatives, or lets
+     * them share one histogram, where the algorithm allows, and otherwise {@link #render()},
+     * {@link #render(List, FrameHandler)} and {@link #submit} refuse it with an
+     * {@link IllegalStateException}, leaving the job in progress alone.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budgets must be positive");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget > 0 ? memoryBudget : Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+
+    public ParameterSchema getParameterSchema() {
+        return algorithmFactory.getSchema();
+    }
+
+    public LinkedHashMap<String, String> getParameters() {
+        return algorithmFactory.getDefaultParameters();
+    }
+
+    /**
+     * Starts rendering with the current algorithm, cancelling the job in progress, if any.
+     */
+    public Job render() {
+        return render(null, null, 0);
+    }
+
+    /**
+     * As {@link #render()}, but develops the image in bands of {@code tileHeight} rows, handing
+     * each to {@code handler} as soon as it is done instead of keeping the image whole, so that
+     * developing it takes memory in proportion to a band rather than to the raster, e.g. to stream
+     * it out through a {@link PngWriter}. The job completes with null once the last band has been
+     * handled, and has no previews; {@link #getPositive()} and {@link #develop(Map)} leave it
+     * alone.
+     */
+    public Job render(int tileHeight, TileHandler handler) {
+        if (tileHeight <= 0) {
+            throw new IllegalArgumentException("Tiles must be at least a row high");
+        }
+        return render(handler, null, tileHeight);
+    }
+
+    /**
+     * As {@link #render(int, TileHandler)}, but develops the image at full precision, e.g. to
+     * export it through a {@link BandWriter}. Algorithms that cannot
+     * {@linkplain Algorithm#isTileable() develop tiles} are developed to a positive, and so to 8
+     * bits, first.
+     */
+    public Job render(int tileHeight, BandHandler handler) {
+        if (tileHeight <= 0) {
+            throw new IllegalArgumentException("Bands must be at least a row high");
+        }
+        return render(null, handler, tileHeight);
+    }
+
+    private Job render(TileHandler tileHandler, BandHandler bandHandler, int tileHeight) {
+        Render previous = current;
+        boolean tiled = tileHandler != null || bandHandler != null;
+        MemoryPlanner.Plan plan = plan(algorithm, rasterSize, false,
+                !tiled && previous != null && previous.sequence == null, tileHeight);
+        cancel();
+        if (!tiled && positive == null) {
+            positive = new Positive(rasterSize);
+        }
+        Job job = new Job(DEFAULT_PRIORITY, tiled ? null : positive, true);
+        job.tileHandler = tileHandler;
+        job.bandHandler = bandHandler;
+        job.tileHeight = tileHeight;
+        setStopping(job);
+        currentJob = job;
+        Negative inherited = retire(previous, !tiled);
+        current = startRender(job, algorithm, parameters, null, 0, rasterSize, plan);
+        current.inherited = inherited;
+        renderInProgress = true;
+        listener.renderingBegun();
+        listener.log(String.format("Raster size: %dx%d\nNegatives: %d\nMemory: %s",
+                rasterSize.width, rasterSize.height, current.negatives.length,
+                MemoryPlanner.describe(plan, getMemoryBudget())));
+        return job;
+    }
+
+    /**
+     * Renders a sequence of frames, e.g. those of an {@link Animation}, with the current algorithm,
+     * cancelling the job in progress, if any. Every frame's parameters are validated before
+     * anything is rendered. Each finished frame goes to {@code handler}; the job completes, and
+     * {@link Listener#renderingEnded()} is called, after the last one.
+     */
+    public Job render(List<? extends Map<String, String>> frames, FrameHandler handler)
+            throws InvalidParameterException {
+        List<Algorithm> algorithms = new ArrayList<>(frames.size());
+        for (Map<String, String> frame : frames) {
+            algorithms.add(createAlgorithmInstance(algorithmFactory, frame));
+        }
+        for (int i = 1; i < algorithms.size(); i++) {
+            algorithms.get(i).follow(algorithms.get(i - 1));
+        }
+        // Once they follow one another, since what frames carry over takes memory.
+        List<MemoryPlanner.Plan> plans = new ArrayList<>(algorithms.size());
+        for (Algorithm frame : algorithms) {
+            plans.add(plan(frame, rasterSize, true, false, 0));
+        }
+        Render previous = current;
+        cancel();
+        Job job = new Job(DEFAULT_PRIORITY, null, true);
+        currentJob = job;
+        retire(previous, false);
+        Sequence sequence = new Sequence(job, algorithms, plans, handler);
+        renderInProgress = true;
+        listener.renderingBegun();
+        sequence.startNextFrame();
+        listener.log(String.format("Raster size: %dx%d\nNegatives: %d\nFrames: %d\nMemory: %s",
+                rasterSize.width, rasterSize.height, current.negatives.length, frames.size(),
+                MemoryPlanner.describe(plans.get(0), getMemoryBudget())));
+        return job;
+    }
+
+    /**
+     * Submits an independent render alongside any others, without touching the current algorithm,
+     * parameters, job or positive. Its progress and result are only reported through the job.
+     *
+     * @param priority jobs with a higher priority are served first, e.g. a quick preview ahead of a
+     * poster render; see {@link #DEFAULT_PRIORITY}.
+     */
+    public Job submit(String algorithmName, Map<String, String> parameters, Dimension rasterSize,
+            int priority) throws InvalidParameterException {
+        Algorithm submitted = createAlgorithmInstance(getAlgorithmFactory(algorithmName),
+                parameters);
+        MemoryPlanner.Plan plan = plan(submitted, rasterSize, false, false, 0);
+        Job job = new Job(priority, new Positive(rasterSize), false);
+        setStopping(job);
+        startRender(job, submitted, new LinkedHashMap<>(parameters), null, 0, rasterSize, plan);
+        return job;
+    }
+
+    private void setStopping(Job job) {
+        job.timeBudget = timeBudget == null ? 0 : timeBudget.toNanos();
+        job.noiseTarget = noiseTarget;
+    }
+
+    /*
+     Plans a render of the algorithm within the memory budget; see MemoryPlanner. Throws an
+     IllegalStateException if it does not fit.
+     */
+    private MemoryPlanner.Plan plan(Algorithm algorithm, Dimension rasterSize, boolean sequence,
+            boolean inheriting, int tileHeight) {
+        int workerCount = scheduler.getWorkerCount();
+        return MemoryPlanner.plan(algorithm, rasterSize,
+                workerCount * algorithm.getNegativeMultiplier(workerCount), workerCount,
+                sequence, placement == Placement.LOCAL && algorithm.isMergeable(), inheriting,
+                tileHeight, getMemoryBudget());
+    }
+
+    private Render startRender(Job job, Algorithm algorithm, Map<String, String> parameters,
+            Sequence sequence, int frame, Dimension rasterSize, MemoryPlanner.Plan plan) {
+        int processorCount = scheduler.getWorkerCount();
+        int multiplier = algorithm.getNegativeMultiplier(processorCount);
+        long taskCount = Math.max(algorithm.getTaskCount(processorCount), 1);
+        // A time budget, rather than the task count, ends the render.
+        long batchCount = job.timeBudget > 0 ? Long.MAX_VALUE : taskCount;
+        int negativeCount = plan.negativeCount();
+        Tuning tuning = null;
+        Tuner.Calibration calibration = null;
+        if (autotuning && algorithm.isTunable()) {
+            String workload = algorithm + " " + rasterSize.width + "x" + rasterSize.height
+                    + (plan.shared() ? " shared" : "");
+            // Shared negatives count atomically, whatever the mode.
+            List<String> modes = plan.shared() ? algorithm.getAccumulationModes().subList(0, 1)
+                    : algorithm.getAccumulationModes();
+            if (job.reported && sequence == null && batchCount >= Tuner.MIN_TASK_COUNT) {
+                calibration = tuner.calibrate(workload, negativeCount, modes, System.nanoTime());
+                tuning = calibration.getTrial();
+            } else {
+                tuning = tuner.getLearned(workload, negativeCount, modes);
+            }
+            if (tuning != null) {
+                negativeCount = tuning.workers();
+            }
+        }
+        // Negatives without a batch would never be developed.
+        Negative[] negatives = new Negative[(int) Math.min(negativeCount,
+                (batchCount - 1) / (tuning == null ? 1 : tuning.batchScale()) + 1)];
+        boolean local = placement == Placement.LOCAL && !plan.shared();
+        Render render = new Render(job, algorithm, parameters, negatives, sequence, frame,
+                local && algorithm.isMergeable(), plan.shared());
+        // Negatives allocated by their home worker stay there, and submitted renders, of any size,
+        // leave the pool to the current one.
+        render.pooled = job.reported && !local;
+        NegativePool.Shape shape = null;
+        if (render.pooled) {
+            shape = NegativePool.Shape.of(algorithm, rasterSize, plan.shared());
+            // With room for any inherited samples, and those faded for previews.
+            pool.reserve(shape, negatives.length + 2);
+        }
+        DataBuffer shared = null;
+        for (int i = 0, j = 0; i < negatives.length; i++, j = (j + 1) % multiplier) {
+            Negative negative = shared != null ? new Negative(shared, rasterSize)
+                    : render.pooled ? pool.take(shape, true) : null;
+            if (negative == null) {
+                negative = new Negative(local ? null : plan.shared()
+                        ? algorithm.createSharedNegativeBuffer(rasterSize)
+                        : algorithm.createNegativeBuffer(rasterSize), rasterSize);
+            }
+            negative.data.put("residue_class", j);
+            if (plan.shared()) {
+                shared = negative.buffer;
+                negative.data.put("shared", true);
+            } else {
+                negative.data.remove("shared");
+            }
+            negatives[i] = negative;
+        }
+        job.render = render;
+        render.unclaimed.set(batchCount);
+        render.tuning = tuning;
+        render.calibration = calibration;
+        job.taskCount += taskCount;
+        for (int i = 0; i < negatives.length; i++) {
+            Task task = render.tasks[i] = new Task(render, negatives[i], i);
+            task.home = i % processorCount;
+            claim(task);
+        }
+        for (Task task : render.tasks) {
+            enqueue(task);
+        }
+        return render;
+    }
+
+    /*
+     Offers the samples of a replaced render, if #inheriting, to the current algorithm (see
+     Algorithm.reproject()) and returns what it carried over, if anything, then gives the replaced
+     render's negatives back to the pool. Workers are held back meanwhile, and previews too, as the
+     negatives go.
+     */
+    private synchronized Negative retire(Render previous, boolean inheriting) {
+        if (previous == null) {
+            return null;
+        }
+        boolean wasPaused = isPaused();
+        pause();
+        try {
+            Negative inherited = null;
+            if (inheriting && previous.sequence == null) {
+                inherited = takeNegative(algorithm,
+                        NegativePool.Shape.of(algorithm, rasterSize, false));
+                Negative[] negatives = previous.getLiveNegatives();
+                if (negatives.length == 0 || !algorithm.reproject(previous.algorithm, negatives,
+                        previous.job.getSampledFraction(), inherited)) {
+                    pool.give(inherited);
+                    inherited = null;
+                }
+            }
+            release(previous);
+            return inherited;
+        } finally {
+            if (!wasPaused) {
+                resume();
+            }
+        }
+    }
+
+    /*
+     A zeroed negative from the pool, or a new one of the algorithm if there is none of the shape.
+     */
+    private Negative takeNegative(Algorithm algorithm, NegativePool.Shape shape) {
+        Negative negative = pool.take(shape, true);
+        return negative != null ? negative
+                : new Negative(algorithm.createNegativeBuffer(shape.size()), shape.size());
+    }
+
+    /*
+     Gives a render's negatives back to the pool once nothing is to read them again, leaving them
+     with no buffer.
+     */
+    private void release(Render render) {
+        synchronized (render) {
+            if (render.pooled) {
+                for (Negative negative : render.negatives) {
+                    if (render.shared && negative != render.negatives[0]) {
+                        negative.buffer = null; // The same buffer as the first's.
+                    } else {
+                        pool.give(negative);
+                    }
+                }
+            }
+        }
+        releaseInherited(render);
+    }
+
+    private void releaseInherited(Render render) {
+        Negative inherited = render.inherited, faded = render.faded;
+        render.inherited = render.faded = null;
+        pool.give(inherited);
+        pool.give(faded);
+    }
+
+    /*
+     The negatives to preview a render in progress with: its own, and any inherited samples faded
+     by the fraction of its own that are yet to come, so that the two add up to about one render's
+     worth throughout.
+     */
+    private Negative[] getPreviewNegatives(Render render) {
+        Negative[] negatives = render.getLiveNegatives();
+        Negative inherited = render.inherited;
+        if (inherited == null) {
+            return negatives;
+        }
+        double weight = 1 - render.job.getProgress();
+        Negative faded = render.faded;
+        if (faded == null) { // Kept for the render's later previews.
+            render.faded = faded = takeNegative(render.algorithm,
+                    NegativePool.Shape.of(inherited));
+        }
+        for (int i = 0; i < inherited.buffer.getSize(); i++) {
+            faded.buffer.setElem(i, (int) (inherited.buffer.getElem(i) * weight));
+        }
+        negatives = Arrays.copyOf(negatives, negatives.length + 1);
+        negatives[negatives.length - 1] = faded;
+        return negatives;
+    }
+
+    /*
+     Develops the newest render of a job into a new positive for its publishers, or returns null if
+     there is nothing to develop. Workers are only held back while its negatives are copied, not
+     while they are processed.
+     */
+    private Preview preview(Job job) {
+        Render render = job.render;
+        if (render == null || job.result.isDone() || job.tileHandler != null
+                || job.bandHandler != null) {
+            return null;
+        }
+        Negative[] negatives;
+        double progress;
+        synchronized (this) { // As getPositive() and develop() are, which pause too.
+            boolean wasPaused = isPaused();
+            pause();
+            try {
+                negatives = copies.copy(render.algorithm, getPreviewNegatives(render));
+                progress = job.getProgress();
+            } finally {
+                if (!wasPaused) {
+                    resume();
+                }
+            }
+        }
+        if (negatives.length == 0) {
+            return null;
+        }
+        // The positive belongs to the subscribers; the copies go back for the next preview.
+        Positive preview = new Positive(negatives[0].size);
+        render.developer.process(negatives, preview);
+        copies.give(negatives);
+        return new Preview(preview, progress);
+    }
+
+    private void enqueue(Task task) {
+        scheduler.enqueue(task);
+    }
+
+    private void removeTasks(Job job) {
+        scheduler.removeIf(task -> task.render.job == job);
+    }
+
+    /**
+     * @return true if {@link #develop(Map)} would accept {@code parameters}.
+     */
+    public boolean canDevelop(Map<String, String> parameters) {
+        Render render = current;
+        if (render == null || render.parameters == null || render.job.positive == null
+                || !render.algorithm.toString().equals(algorithmFactory.getName())) {
+            return false;
+        }
+        try {
+            return getParameterSchema().findSamplingChange(render.parameters, parameters) == null;
+        } catch (InvalidParameterException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Processes the negatives of the current render, finished or not, again with
+     * {@code parameters}, which may only differ from those it was started with in
+     * {@linkplain ParameterSchema.Parameter#developing() developing} parameters, and makes them the
+     * current parameters. The render carries on sampling if it is still in progress, and is
+     * developed with the new parameters from then on.
+     *
+     * @throws InvalidParameterException also if a parameter that affects sampling differs.
+     * @throws IllegalStateException if there is no render of the current algorithm, or it is part
+     * of a sequence or tiled.
+     */
+    public synchronized Positive develop(Map<String, String> parameters)
+            throws InvalidParameterException {
+        Render render = current;
+        if (render == null || render.parameters == null || render.job.positive == null
+                || !render.algorithm.toString().equals(algorithmFactory.getName())) {
+            throw new IllegalStateException("No render of " + algorithmFactory.getName()
+                    + " to develop");
+        }
+        String changed = getParameterSchema().findSamplingChange(render.parameters, parameters);
+        if (changed != null) {
+            throw new InvalidParameterException(changed, "changes sampling, render again to apply");
+        }
+        Algorithm developer = createAlgorithmInstance(algorithmFactory, parameters);
+        algorithm = developer;
+        this.parameters = new LinkedHashMap<>(parameters);
+        listener.parametersSet();
+        boolean wasPaused = isPaused();
+        pause();
+        try {
+            render.developer = developer;
+            Negative[] negatives = render.job.result.isDone() ? render.getLiveNegatives()
+                    : getPreviewNegatives(render);
+            if (negatives.length > 0) {
+                synchronized (positiveLock) {
+                    developer.process(negatives, render.job.positive);
+                }
+            }
+        } finally {
+            if (!wasPaused) {
+                resume();
+            }
+        }
+        return render.job.positive;
+    }
+
+    public synchronized Positive getPositive() {
+        if (positive == null) {
+            positive = new Positive(rasterSize);
+        }
+        if (renderInProgress && current.job.tileHandler == null
+                && current.job.bandHandler == null) {
+            boolean wasPaused = isPaused();
+            pause();
+            listener.renderingPaused();
+            try {
+                Negative[] negatives = getPreviewNegatives(current);
+                if (negatives.length > 0) {
+                    synchronized (positiveLock) {
+                        current.developer.process(negatives, positive);
+                    }
+                }
+            } finally {
+                if (!wasPaused) {
+                    resume();
+                }
+            }
+            listener.renderingResumed();
+            return positive;
+        } else {
+            return positive;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package site.bsws.neb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes a job's {@link Engine.Event}s to any number of subscribers, each signalled on the
+ * executor, one signal at a time, and at its own pace. Posting never waits: events conflate by
+ * kind, so a subscriber that has not asked for more is later handed only the latest of each, and
+ * no subscriber holds up the workers or the others. Previews are only developed while some
+ * subscriber is asking for events, at most once every preview interval, and are shared.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class EventPublisher implements Flow.Publisher<Engine.Event> {
+
+    private final Executor executor;
+    private final long previewInterval; // In nanoseconds; 0 for no previews.
+    private final Supplier<Engine.Preview> previewSource; // Gives null if there is nothing yet.
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private Engine.Preview preview; // The latest, developed at #previewTime; guarded by this.
+    private long previewTime;
+    private volatile boolean completed;
+    private volatile Throwable failure;
+
+    EventPublisher(Executor executor, long previewInterval,
+            Supplier<Engine.Preview> previewSource) {
+        this.executor = executor;
+        this.previewInterval = previewInterval;
+        this.previewSource = previewSource;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Engine.Event> subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.schedule();
+    }
+
+    /**
+     * Hands the event to every subscriber, in place of any of the same kind not yet delivered.
+     */
+    void post(Engine.Event event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.post(event);
+        }
+    }
+
+    /**
+     * Signals completion, or the failure, to every subscriber once it has been handed the events
+     * posted so far.
+     */
+    void complete(Throwable failure) {
+        this.failure = failure;
+        completed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    // The latest preview, developed anew if it is older than the interval.
+    private synchronized Engine.Preview getPreview() {
+        long now = System.nanoTime();
+        if (preview == null || now - previewTime >= previewInterval) {
+            Engine.Preview developed = previewSource.get();
+            if (developed != null) {
+                preview = developed;
+                previewTime = now;
+            }
+        }
+        return preview;
+    }
+
+    private class Subscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Engine.Event> subscriber;
+        private final AtomicInteger scheduled = new AtomicInteger();
+        private final AtomicLong demand = new AtomicLong();
+        // Events not yet delivered, one per kind, in order of posting; guarded by the map.
+        private final LinkedHashMap<Class<?>, Engine.Event> pending = new LinkedHashMap<>();
+        // Only touched by run(), which is never run twice at once.
+        private boolean subscribed, terminated;
+        private Engine.Preview delivered;
+        private long deliveredTime = System.nanoTime();
+        private boolean previewLast; // Whether the last event delivered was a preview.
+        private volatile boolean cancelled, invalid;
+
+        Subscription(Flow.Subscriber<? super Engine.Event> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void post(Engine.Event event) {
+            synchronized (pending) {
+                pending.remove(event.getClass()); // Move to the back.
+                pending.put(event.getClass(), event);
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (scheduled.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    cancel();
+                    Logger.getLogger(EventPublisher.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalid = true; // Signalled as a failure by run(), as the specification asks.
+                schedule();
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE
+                    : current + added);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                try {
+                    deliver();
+                } catch (RuntimeException ex) { // The subscriber broke its contract.
+                    cancel();
+                    Logger.getLogger(EventPublisher.class.getName()).log(Level.WARNING, null, ex);
+                }
+                missed = scheduled.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            if (!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            while (!cancelled && !terminated) {
+                if (invalid) {
+                    terminate(new IllegalArgumentException("Requests must be positive"));
+                    return;
+                }
+                boolean done = completed; // Read before polling, so nothing posted is missed.
+                Engine.Event next = null;
+                // A due preview takes turns with posted events, so neither starves the other.
+                if (demand.get() > 0 && !done && previewInterval > 0 && !previewLast
+                        && System.nanoTime() - deliveredTime >= previewInterval) {
+                    next = nextPreview();
+                }
+                boolean empty;
+                synchronized (pending) {
+                    if (next == null && demand.get() > 0) {
+                        Iterator<Engine.Event> events = pending.values().iterator();
+                        if (events.hasNext()) {
+                            next = events.next();
+                            events.remove();
+                        }
+                    }
+                    empty = pending.isEmpty();
+                }
+                if (next == null && demand.get() > 0 && !done && previewInterval > 0) {
+                    next = nextPreview();
+                }
+                if (next != null) {
+                    previewLast = next == delivered;
+                    demand.decrementAndGet();
+                    subscriber.onNext(next);
+                } else {
+                    if (done && empty) {
+                        terminate(failure);
+                    }
+                    return;
+                }
+            }
+        }
+
+        // The latest preview, unless it has been delivered already.
+        private Engine.Preview nextPreview() {
+            Engine.Preview preview = getPreview();
+            if (preview == null || preview == delivered) {
+                return null;
+            }
+            delivered = preview;
+            deliveredTime = System.nanoTime();
+            return preview;
+        }
+
+        private void terminate(Throwable failure) {
+            terminated = true;
+            cancel();
+            if (failure == null) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Algorithm;
+import java.awt.Dimension;
+import java.awt.image.DataBuffer;
+
+/**
+ * Plans how a render is laid out in memory before anything is allocated for it. A render holds its
+ * negatives (two frames' worth, for a sequence, which samples two frames at once) and what the
+ * algorithm keeps while sampling them (see {@link Algorithm#estimateScratchBytes(Dimension, int)}),
+ * a wider copy of one if finished negatives are merged into it, the positive, or for a tiled
+ * render, a band of it, what {@link Algorithm#process(Engine.Negative[], Engine.Positive)} takes,
+ * and unless it is tiled, for previews, a copy of the negatives and another positive, and any
+ * samples inherited from the render it replaced. If that is over the budget, the planner tries, in
+ * order:
+ * <ol>
+ * <li>fewer negatives, as long as every worker still has one, if the algorithm takes any number of
+ * them (see {@link Algorithm#isTunable()});</li>
+ * <li>one histogram for all the workers, if the algorithm can
+ * {@linkplain Algorithm#createSharedNegativeBuffer(Dimension) share} one;</li>
+ * <li>fewer negatives than workers, down to one, if the algorithm takes any number of them;</li>
+ * </ol>
+ * and refuses the render if none of these fit.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class MemoryPlanner {
+
+    private static final Dimension PROBE_SIZE = new Dimension(1, 1);
+
+    /**
+     * How many negatives a render takes and whether they share one buffer, and about how many
+     * bytes it needs with them.
+     */
+    record Plan(int negativeCount, boolean shared, long bytes) {
+    }
+
+    /**
+     * @param negativeCount how many negatives the render would take, given the memory.
+     * @param workers how many workers sample it.
+     * @param sequence whether the render is a frame of a sequence.
+     * @param merging whether finished negatives are merged into one.
+     * @param inheriting whether the render may inherit samples from the one it replaces.
+     * @param tileHeight the height of the bands a tiled render is developed in, or 0.
+     * @throws IllegalStateException if the render does not fit in the budget, or its negatives
+     * would not fit in a buffer.
+     */
+    static Plan plan(Algorithm algorithm, Dimension rasterSize, int negativeCount, int workers,
+            boolean sequence, boolean merging, boolean inheriting, int tileHeight, long budget) {
+        long pixels = (long) rasterSize.width * rasterSize.height;
+        DataBuffer probe = algorithm.createNegativeBuffer(PROBE_SIZE);
+        if (pixels * probe.getSize() > Integer.MAX_VALUE) {
+            throw new IllegalStateException(String.format("A %dx%d negative of %s would hold %d"
+                    + " counters, more than a buffer can", rasterSize.width, rasterSize.height,
+                    algorithm, pixels * probe.getSize()));
+        }
+        long elements = pixels * probe.getSize() * probe.getNumBanks();
+        long negativeBytes = elements * DataBuffer.getDataTypeSize(probe.getDataType()) / 8;
+        // Merging widens negatives to ints.
+        long wideBytes = Math.max(negativeBytes, elements * Integer.BYTES);
+        DataBuffer sharedProbe = algorithm.createSharedNegativeBuffer(PROBE_SIZE);
+        long sharedBytes = sharedProbe == null ? 0 : pixels * sharedProbe.getSize()
+                * sharedProbe.getNumBanks() * DataBuffer.getDataTypeSize(sharedProbe.getDataType())
+                / 8;
+        long positiveBytes = pixels * Integer.BYTES;
+        boolean mergeable = algorithm.isMergeable();
+        int frames = sequence ? 2 : 1;
+        long developBytes; // The positive, or band, and what processing it takes.
+        if (tileHeight > 0 && algorithm.isTileable()) {
+            Dimension tile = new Dimension(rasterSize.width,
+                    Math.min(tileHeight, rasterSize.height));
+            developBytes = (long) tile.width * tile.height * Integer.BYTES
+                    + algorithm.estimateProcessBytes(tile);
+        } else {
+            developBytes = positiveBytes * (sequence ? 2 : 1)
+                    + algorithm.estimateProcessBytes(rasterSize);
+        }
+        boolean previewing = tileHeight == 0;
+        // What the algorithm keeps while sampling, shared by the negatives and kept in each one.
+        long scratchBytes = algorithm.estimateScratchBytes(rasterSize, 0);
+        long scratchPerNegative = algorithm.estimateScratchBytes(rasterSize, 1) - scratchBytes;
+        // Apart from the negatives, and any wider copies of them, which depend on the plan.
+        long fixedBytes = developBytes + frames * scratchBytes + (previewing ? positiveBytes : 0)
+                + (inheriting ? 2 * negativeBytes : 0);
+        // Previews copy the negatives, merged into one if the algorithm allows.
+        long copyBytes = previewing && mergeable ? wideBytes : 0;
+        long perNegative = frames * (negativeBytes + scratchPerNegative)
+                + (previewing && !mergeable ? negativeBytes : 0);
+        long perFrame = merging ? wideBytes : 0;
+        long full = fixedBytes + copyBytes + frames * perFrame + negativeCount * perNegative;
+        if (full <= budget) {
+            return new Plan(negativeCount, false, full);
+        }
+        int fewer = 0;
+        if (algorithm.isTunable()) {
+            fewer = Math.clamp((budget - fixedBytes - copyBytes - frames * perFrame)
+                    / perNegative, 0, negativeCount);
+            if (fewer >= workers) {
+                return new Plan(fewer, false, fixedBytes + copyBytes + frames * perFrame
+                        + fewer * perNegative);
+            }
+        }
+        long shared = fixedBytes + (frames + (previewing ? 1 : 0)) * sharedBytes
+                + negativeCount * frames * scratchPerNegative;
+        if (sharedProbe != null && shared <= budget) {
+            return new Plan(negativeCount, true, shared);
+        }
+        if (fewer > 0) {
+            return new Plan(fewer, false, fixedBytes + copyBytes + frames * perFrame
+                    + fewer * perNegative);
+        }
+        long least = algorithm.isTunable() ? fixedBytes + copyBytes + frames * perFrame
+                + perNegative : full;
+        if (sharedProbe != null) {
+            least = Math.min(least, shared);
+        }
+        throw new IllegalStateException(String.format("A %dx%d render of %s needs about %s (%s"
+                + " at the least), over the memory budget of %s; make the raster smaller or the"
+                + " budget larger", rasterSize.width, rasterSize.height, algorithm, format(full),
+                format(least), format(budget)));
+    }
+
+    /**
+     * @return how much of the budget the plan takes, for the log.
+     */
+    static String describe(Plan plan, long budget) {
+        return String.format("about %s of %s%s", format(plan.bytes()), format(budget),
+                plan.shared() ? ", negatives sharing a histogram" : "");
+    }
+
+    static String format(long bytes) {
+        return bytes < 1 << 30 ? String.format("%.1f MiB", bytes / (double) (1 << 20))
+                : String.format("%.2f GiB", bytes / (double) (1 << 30));
+    }
+}
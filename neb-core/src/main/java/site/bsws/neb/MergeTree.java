@@ -0,0 +1,54 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Algorithm;
+
+/**
+ * Folds the negatives of a render into one as they are developed, for placements where each stays
+ * with the worker that sampled it. A negative added while another is waiting is merged into it by
+ * the worker adding it, which then carries on with the result, so that merges run in parallel and
+ * form a tree rather than a chain through a single negative.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+final class MergeTree {
+
+    private final Algorithm algorithm;
+    private int unmergedCount; // Negatives not yet folded into another.
+    private Engine.Negative waiting;
+
+    /**
+     * @param count the number of negatives to be added.
+     */
+    MergeTree(Algorithm algorithm, int count) {
+        this.algorithm = algorithm;
+        unmergedCount = count;
+    }
+
+    /**
+     * Folds a developed negative into the one waiting to be merged, if any, and so on with the
+     * result. A negative folded into another loses its buffer.
+     *
+     * @return the sole remaining negative once all have been added and folded in, null otherwise.
+     */
+    Engine.Negative add(Engine.Negative negative) {
+        while (true) {
+            Engine.Negative partner;
+            synchronized (this) {
+                partner = waiting;
+                if (partner == null) {
+                    if (unmergedCount == 1) {
+                        return negative;
+                    }
+                    waiting = negative;
+                    return null;
+                }
+                waiting = null;
+            }
+            algorithm.merge(negative, partner);
+            partner.buffer = null;
+            synchronized (this) {
+                unmergedCount--;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Algorithm;
+import java.awt.Dimension;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Keeps the buffers of negatives that are done with, along with their data (and so the
+ * algorithm's accumulators and scratch arrays), for the next render of the same shape to take up,
+ * so that rendering again at the same size allocates no negatives; the engine keeps the copies it
+ * develops previews from in another. Only negatives of one shape are kept, the last reserved, and
+ * no more than were reserved; they are held softly, so that they give way before the heap runs
+ * out.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+final class NegativePool {
+
+    private static final Dimension PROBE_SIZE = new Dimension(1, 1);
+
+    /**
+     * The kind of buffer, its length and number of banks, and the raster size of a negative.
+     */
+    record Shape(Class<? extends DataBuffer> type, int length, int banks, Dimension size) {
+
+        static Shape of(Engine.Negative negative) {
+            return new Shape(negative.buffer.getClass(), negative.buffer.getSize(),
+                    negative.buffer.getNumBanks(), negative.size);
+        }
+
+        /**
+         * The shape of the buffers the algorithm allocates at the raster size, of one negative
+         * each or shared, found on a pixel's worth.
+         */
+        static Shape of(Algorithm algorithm, Dimension size, boolean shared) {
+            DataBuffer probe = shared ? algorithm.createSharedNegativeBuffer(PROBE_SIZE)
+                    : algorithm.createNegativeBuffer(PROBE_SIZE);
+            return new Shape(probe.getClass(), probe.getSize() * size.width * size.height,
+                    probe.getNumBanks(), size);
+        }
+    }
+
+    private record Kept(DataBuffer buffer, HashMap<String, Object> data) {
+    }
+
+    private final ArrayDeque<SoftReference<Kept>> kept = new ArrayDeque<>();
+    private Shape shape;
+    private int capacity;
+
+    /**
+     * Makes {@code shape} the one to keep, up to {@code capacity} negatives of it, letting go of
+     * any others.
+     */
+    synchronized void reserve(Shape shape, int capacity) {
+        if (!shape.equals(this.shape)) {
+            kept.clear();
+            this.shape = shape;
+        }
+        this.capacity = capacity;
+        while (kept.size() > capacity) {
+            kept.poll();
+        }
+    }
+
+    /**
+     * @return a negative of the shape kept, its buffer zeroed if {@code clear}, or null if there
+     * is none of {@code shape} left.
+     */
+    Engine.Negative take(Shape shape, boolean clear) {
+        Kept taken = null;
+        synchronized (this) {
+            while (shape.equals(this.shape) && taken == null && !kept.isEmpty()) {
+                taken = kept.poll().get();
+            }
+        }
+        if (taken == null) {
+            return null;
+        }
+        if (clear) {
+            clear(taken.buffer());
+        }
+        Engine.Negative negative = new Engine.Negative(taken.buffer(), shape.size());
+        negative.data = taken.data();
+        return negative;
+    }
+
+    /**
+     * Takes the buffer and data of a negative that is done with, leaving it with no buffer, as a
+     * merged negative is left; it is dropped if it is not of the shape kept, or the pool is full.
+     * A negative with no buffer is passed over, so that giving one up twice is harmless.
+     */
+    void give(Engine.Negative negative) {
+        if (negative == null) {
+            return;
+        }
+        synchronized (this) {
+            if (negative.buffer == null) {
+                return;
+            }
+            if (Shape.of(negative).equals(shape) && kept.size() < capacity) {
+                kept.add(new SoftReference<>(new Kept(negative.buffer, negative.data)));
+            }
+            negative.buffer = null;
+        }
+    }
+
+    private static void clear(DataBuffer buffer) {
+        for (int bank = 0; bank < buffer.getNumBanks(); bank++) {
+            switch (buffer) {
+                case DataBufferInt ints ->
+                    Arrays.fill(ints.getData(bank), 0);
+                case DataBufferUShort shorts ->
+                    Arrays.fill(shorts.getData(bank), (short) 0);
+                case DataBufferShort shorts ->
+                    Arrays.fill(shorts.getData(bank), (short) 0);
+                case DataBufferByte bytes ->
+                    Arrays.fill(bytes.getData(bank), (byte) 0);
+                case DataBufferFloat floats ->
+                    Arrays.fill(floats.getData(bank), 0);
+                case DataBufferDouble doubles ->
+                    Arrays.fill(doubles.getData(bank), 0);
+                default -> {
+                    for (int i = 0; i < buffer.getSize(); i++) {
+                        buffer.setElem(bank, i, 0);
+                    }
+                }
+            }
+        }
+    }
+}
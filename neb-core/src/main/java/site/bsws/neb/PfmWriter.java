@@ -0,0 +1,55 @@
+package site.bsws.neb;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * Exports bands as a PFM: a short text header, then the samples as little-endian 32-bit floats,
+ * uncompressed, with the rows from the bottom up. Each band is written where its rows go.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+final class PfmWriter extends BandWriter {
+
+    private final long dataStart;
+
+    PfmWriter(Path path, Dimension size, Executor executor) throws IOException {
+        super(path, size, executor);
+        // A negative scale says the floats are little-endian.
+        byte[] header = String.format("PF\n%d %d\n-1.0\n", size.width, size.height)
+                .getBytes(StandardCharsets.US_ASCII);
+        writeFully(ByteBuffer.wrap(header));
+        dataStart = header.length;
+    }
+
+    @Override
+    protected ByteBuffer[] encode(Engine.Band band) {
+        int rowLength = 3 * band.width;
+        ByteBuffer bytes = ByteBuffer.allocate(band.samples.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int r = band.height - 1; r >= 0; r--) {
+            bytes.asFloatBuffer().put(band.samples, r * rowLength, rowLength);
+            bytes.position(bytes.position() + rowLength * Float.BYTES);
+        }
+        return new ByteBuffer[]{bytes.flip()};
+    }
+
+    @Override
+    protected void write(Engine.Band band, ByteBuffer[] encoded) throws IOException {
+        long position = dataStart + (long) (size.height - band.y - band.height) * size.width * 3
+                * Float.BYTES;
+        ByteBuffer bytes = encoded[0];
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    @Override
+    protected void finish() {
+    }
+}
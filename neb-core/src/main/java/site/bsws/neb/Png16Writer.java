@@ -0,0 +1,126 @@
+package site.bsws.neb;
+
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Exports bands as a 16-bit RGB PNG. The image data of a PNG is a single zlib stream, so each band
+ * is deflated on its own into a run of blocks of that stream, flushed to a byte boundary, and
+ * written to an IDAT chunk of its own, in order; the stream's header and checksum have chunks of
+ * their own too. The checksum is made up of those of the bands.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+final class Png16Writer extends BandWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    // Of a zlib stream deflated at the fastest level, with no dictionary.
+    private static final byte[] ZLIB_HEADER = {0x78, 0x01};
+    private static final int ADLER_BASE = 65521;
+    private static final int BYTES_PER_PIXEL = 6;
+    private long adler = 1; // Of the bands written so far.
+
+    Png16Writer(Path path, Dimension size, Executor executor) throws IOException {
+        super(path, size, executor);
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(size.width).putInt(size.height);
+        header.put(new byte[]{16, 2, 0, 0, 0}); // 16 bits per sample, RGB, no interlacing.
+        writeFully(ByteBuffer.wrap(SIGNATURE), chunk("IHDR", header.array(), header.capacity()),
+                chunk("IDAT", ZLIB_HEADER, ZLIB_HEADER.length));
+    }
+
+    /*
+     Rows are filtered by the difference from the pixel to the left (filter type 1), which suits
+     smooth images, then deflated as fast as deflate goes, since images this deep are large and
+     passed on to be graded rather than kept. The band's checksum comes after its chunk.
+     */
+    @Override
+    protected ByteBuffer[] encode(Engine.Band band) {
+        int rowLength = 1 + BYTES_PER_PIXEL * band.width;
+        byte[] raw = new byte[band.height * rowLength];
+        for (int r = 0; r < band.height; r++) {
+            int start = r * rowLength;
+            raw[start] = 1;
+            for (int i = 0, k = start + 1; i < 3 * band.width; i++) {
+                int value = toShort(band.samples[3 * r * band.width + i]);
+                raw[k++] = (byte) (value >> 8);
+                raw[k++] = (byte) value;
+            }
+            for (int k = start + rowLength - 1; k > start + BYTES_PER_PIXEL; k--) {
+                raw[k] -= raw[k - BYTES_PER_PIXEL];
+            }
+        }
+        Adler32 checksum = new Adler32();
+        checksum.update(raw);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2);
+        try {
+            deflater.setInput(raw);
+            byte[] buffer = new byte[1 << 16];
+            if (isLast(band)) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int count;
+                do { // Until the flush fits, as Deflater asks.
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        ByteBuffer sum = ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue());
+        return new ByteBuffer[]{chunk("IDAT", compressed.toByteArray(), compressed.size()),
+            sum.flip()};
+    }
+
+    @Override
+    protected void write(Engine.Band band, ByteBuffer[] encoded) throws IOException {
+        writeFully(encoded[0]);
+        adler = combine(adler, encoded[1].getInt() & 0xffffffffL,
+                (long) band.height * (1 + BYTES_PER_PIXEL * band.width));
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES).putInt((int) adler);
+        writeFully(chunk("IDAT", trailer.array(), Integer.BYTES), chunk("IEND", new byte[0], 0));
+    }
+
+    private static int toShort(float sample) {
+        return Math.clamp(Math.round(sample * 0xffff), 0, 0xffff);
+    }
+
+    // The Adler-32 of two runs of bytes, from theirs and the length of the second, as zlib has it.
+    private static long combine(long first, long second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xffff;
+        long sum2 = remainder * sum1 % ADLER_BASE;
+        sum1 += (second & 0xffff) + ADLER_BASE - 1;
+        sum2 += (first >>> 16) + (second >>> 16) + ADLER_BASE - remainder;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return sum2 << 16 | sum1;
+    }
+
+    private static ByteBuffer chunk(String type, byte[] bytes, int length) {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(bytes, 0, length);
+        ByteBuffer chunk = ByteBuffer.allocate(length + 12);
+        chunk.putInt(length).put(name).put(bytes, 0, length).putInt((int) crc.getValue());
+        return chunk.flip();
+    }
+}
@@ -0,0 +1,130 @@
+package site.bsws.neb;
+
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes the bands of a tiled render (see {@link Engine#render(int, Engine.TileHandler)}) as an
+ * 8-bit RGB PNG as they come, so that only a row is held at a time, whatever the size of the image;
+ * the alpha of the positive, always opaque, is left out. The image is complete once its last row
+ * has been handed over.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public class PngWriter implements Engine.TileHandler, Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int CHUNK_SIZE = 1 << 16;
+    private final DataOutputStream out;
+    private final Dimension size;
+    private final IdatStream idat = new IdatStream();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final DeflaterOutputStream data;
+    private final byte[] row;
+    private int rowCount; // Written so far.
+
+    public PngWriter(OutputStream out, Dimension size) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.size = size;
+        row = new byte[1 + 3 * size.width]; // Filter type 0, i.e. none, then RGB.
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(header);
+        fields.writeInt(size.width);
+        fields.writeInt(size.height);
+        fields.write(new byte[]{8, 2, 0, 0, 0}); // 8 bits per sample, RGB, no interlacing.
+        this.out.write(SIGNATURE);
+        writeChunk("IHDR", header.toByteArray(), header.size());
+        data = new DeflaterOutputStream(idat, deflater, CHUNK_SIZE);
+    }
+
+    @Override
+    public void tileRendered(int y, Engine.Positive tile) {
+        if (y != rowCount || tile.getWidth() != size.width) {
+            throw new IllegalStateException(String.format("Expected rows of %d pixels from row %d,"
+                    + " not of %d from row %d", size.width, rowCount, tile.getWidth(), y));
+        }
+        try {
+            for (int r = 0; r < tile.getHeight(); r++) {
+                for (int i = 0, k = 1; i < size.width; i++) {
+                    int pixel = tile.buffer[r * size.width + i];
+                    row[k++] = (byte) (pixel >> 16);
+                    row[k++] = (byte) (pixel >> 8);
+                    row[k++] = (byte) pixel;
+                }
+                data.write(row);
+            }
+            rowCount += tile.getHeight();
+            if (rowCount == size.height) {
+                data.finish();
+                idat.flush();
+                writeChunk("IEND", new byte[0], 0);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Closes the stream, leaving the image truncated if not all its rows have been written.
+     */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+
+    private void writeChunk(String type, byte[] bytes, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(bytes, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(bytes, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    // Wraps what is written to it in IDAT chunks.
+    private class IdatStream extends OutputStream {
+
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int length;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                int taken = Math.min(count, buffer.length - length);
+                System.arraycopy(bytes, offset, buffer, length, taken);
+                length += taken;
+                offset += taken;
+                count -= taken;
+                if (length == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length > 0) {
+                writeChunk("IDAT", buffer, length);
+                length = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Algorithm;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+
+/**
+ * Copies of a render's negatives for a preview to be developed from while the workers carry on,
+ * kept from one preview to the next. Negatives that can be merged are merged into a single copy,
+ * as wide as an int, as merging would make it anyway, so that a preview takes one negative's
+ * worth however many the render has.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+final class PreviewCopies {
+
+    private final NegativePool kept = new NegativePool();
+
+    /**
+     * Copies negatives of {@code algorithm}, which are not to change meanwhile.
+     */
+    Engine.Negative[] copy(Algorithm algorithm, Engine.Negative[] negatives) {
+        if (negatives.length > 1 && algorithm.isMergeable()) {
+            Engine.Negative merged = copy(negatives[0], true, 1);
+            for (int i = 1; i < negatives.length; i++) {
+                algorithm.merge(merged, negatives[i]);
+            }
+            return new Engine.Negative[]{merged};
+        }
+        Engine.Negative[] copies = new Engine.Negative[negatives.length];
+        for (int i = 0; i < negatives.length; i++) {
+            copies[i] = copy(negatives[i], false, negatives.length);
+        }
+        return copies;
+    }
+
+    /**
+     * Takes back copies done with, for the next preview.
+     */
+    void give(Engine.Negative[] copies) {
+        for (Engine.Negative copy : copies) {
+            kept.give(copy);
+        }
+    }
+
+    /*
+     A copy of a negative's buffer, reused from an earlier preview's if one of the shape is kept:
+     of the same kind if it holds ints or unsigned shorts in a single bank, and ints otherwise or
+     if #wide. Up to #count copies are kept.
+     */
+    private Engine.Negative copy(Engine.Negative negative, boolean wide, int count) {
+        DataBuffer buffer = negative.buffer;
+        boolean same = buffer.getNumBanks() == 1 && (buffer instanceof DataBufferInt
+                || !wide && buffer instanceof DataBufferUShort);
+        NegativePool.Shape shape = same ? NegativePool.Shape.of(negative)
+                : new NegativePool.Shape(DataBufferInt.class, buffer.getSize(),
+                        buffer.getNumBanks(), negative.size);
+        kept.reserve(shape, count);
+        Engine.Negative copy = kept.take(shape, false);
+        if (copy == null) {
+            copy = new Engine.Negative(buffer instanceof DataBufferUShort && same
+                    ? new DataBufferUShort(buffer.getSize())
+                    : new DataBufferInt(buffer.getSize(), buffer.getNumBanks()), negative.size);
+        }
+        if (same && buffer instanceof DataBufferInt ints) {
+            System.arraycopy(ints.getData(), 0, ((DataBufferInt) copy.buffer).getData(), 0,
+                    ints.getSize());
+        } else if (same) {
+            System.arraycopy(((DataBufferUShort) buffer).getData(), 0,
+                    ((DataBufferUShort) copy.buffer).getData(), 0, buffer.getSize());
+        } else if (buffer instanceof DataBufferUShort shorts && shorts.getNumBanks() == 1) {
+            short[] counts = shorts.getData();
+            int[] wideCounts = ((DataBufferInt) copy.buffer).getData();
+            for (int i = 0; i < shorts.getSize(); i++) {
+                wideCounts[i] = counts[i] & 0xffff;
+            }
+        } else {
+            for (int bank = 0; bank < buffer.getNumBanks(); bank++) {
+                for (int i = 0; i < buffer.getSize(); i++) {
+                    copy.buffer.setElem(bank, i, buffer.getElem(bank, i));
+                }
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,253 @@
+package site.bsws.neb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Runs the engine's tasks on its workers. Each worker takes tasks off its queue, shared by all of
+ * them unless each has its own, highest priority first and in the order they were queued among
+ * equals, until it is stopped. Pausing is cooperative: a worker finishes the task in hand, then
+ * waits before starting the next, so that {@link #pause()} can return once no task is running. A
+ * cancelled task is dropped when it is taken.
+ *
+ * @param <T> the kind of task run.
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+final class Scheduler<T extends Scheduler.Task> {
+
+    /**
+     * Something for a worker to run: {@link #home} is the index of the queue it goes to, and
+     * {@link #order} its position among tasks of the same priority, set as it is queued.
+     */
+    abstract static class Task {
+
+        int home;
+        long order;
+
+        abstract int getPriority();
+
+        abstract boolean isCancelled();
+
+        /**
+         * Runs the task on a worker, along with whatever follows from it, e.g. queueing it again.
+         */
+        abstract void run();
+
+        /**
+         * Called on the worker if {@link #run()} throws, whatever it throws, e.g. an
+         * OutOfMemoryError allocating a negative, so that the task's job does not wait forever.
+         */
+        abstract void failed(Throwable cause);
+    }
+
+    private final Thread[] threads;
+    private final ThreadFactory threadFactory;
+    private final boolean local;
+    // One queue per worker; unless #local, all entries are the same queue.
+    private final List<PriorityBlockingQueue<T>> queues;
+    private final AtomicLong order = new AtomicLong();
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final Condition resumed = stateLock.newCondition(), idle = stateLock.newCondition();
+    private boolean paused;
+    private long pausedSince; // In System.nanoTime(), while #paused.
+    private int busyWorkerCount;
+    private boolean started;
+
+    Scheduler(int workerCount, boolean local, ThreadFactory threadFactory) {
+        threads = new Thread[workerCount];
+        this.local = local;
+        this.threadFactory = threadFactory;
+        Comparator<T> byPriority = Comparator.comparingInt(task -> -task.getPriority());
+        Comparator<T> order = byPriority.thenComparingLong(task -> task.order);
+        queues = new ArrayList<>(workerCount);
+        PriorityBlockingQueue<T> shared = new PriorityBlockingQueue<>(64, order);
+        for (int i = 0; i < workerCount; i++) {
+            queues.add(local ? new PriorityBlockingQueue<>(64, order) : shared);
+        }
+    }
+
+    int getWorkerCount() {
+        return threads.length;
+    }
+
+    synchronized void start() {
+        if (started) {
+            return;
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = threadFactory.newThread(new Worker(queues.get(i)));
+            threads[i].start();
+        }
+        started = true;
+    }
+
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Interrupts the workers, waits for them to exit and drops the tasks left queued.
+     */
+    synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (PriorityBlockingQueue<T> queue : queues) {
+            queue.clear();
+        }
+        started = false;
+    }
+
+    /**
+     * Holds workers back from starting new tasks and waits until none is running. Called from a
+     * worker itself, it does not wait for that worker.
+     */
+    void pause() {
+        boolean onWorker = isWorker(Thread.currentThread());
+        stateLock.lock();
+        try {
+            if (!paused) {
+                paused = true;
+                pausedSince = System.nanoTime();
+            }
+            while (busyWorkerCount > (onWorker ? 1 : 0)) {
+                idle.awaitUninterruptibly();
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    void resume() {
+        stateLock.lock();
+        try {
+            paused = false;
+            resumed.signalAll();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    boolean isPaused() {
+        stateLock.lock();
+        try {
+            return paused;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * @return the nanoseconds since workers were held back, or 0 if they are not.
+     */
+    long getPausedTime() {
+        stateLock.lock();
+        try {
+            return paused ? System.nanoTime() - pausedSince : 0;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    void enqueue(T task) {
+        task.order = order.getAndIncrement();
+        queues.get(task.home).add(task);
+    }
+
+    /**
+     * Drops the queued tasks that match. A worker may already have taken one, e.g. to wait out a
+     * pause, so tasks removed should also be {@linkplain Task#isCancelled() cancelled}.
+     */
+    void removeIf(Predicate<? super T> filter) {
+        for (PriorityBlockingQueue<T> queue : queues) {
+            queue.removeIf(filter);
+            if (!local) {
+                break; // They are all the same queue.
+            }
+        }
+    }
+
+    private boolean isWorker(Thread thread) {
+        for (Thread worker : threads) {
+            if (worker == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Worker implements Runnable {
+
+        private final PriorityBlockingQueue<T> queue;
+
+        Worker(PriorityBlockingQueue<T> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                T task;
+                try {
+                    task = queue.take();
+                    stateLock.lockInterruptibly();
+                } catch (InterruptedException ex) {
+                    break;
+                }
+                try {
+                    while (paused) {
+                        resumed.await();
+                    }
+                    busyWorkerCount++;
+                } catch (InterruptedException ex) {
+                    enqueue(task);
+                    break;
+                } finally {
+                    stateLock.unlock();
+                }
+                try {
+                    if (!task.isCancelled()) {
+                        task.run();
+                    }
+                } catch (Throwable ex) {
+                    task.failed(ex);
+                    if (ex instanceof VirtualMachineError && !(ex instanceof OutOfMemoryError)) {
+                        throw (VirtualMachineError) ex; // The VM itself is broken.
+                    }
+                } finally {
+                    stateLock.lock();
+                    try {
+                        busyWorkerCount--;
+                        idle.signalAll();
+                    } finally {
+                        stateLock.unlock();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package site.bsws.neb;
+
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+
+/**
+ * Exports bands as a 16-bit RGB TIFF, a band to a strip, each deflated on its own, as fast as
+ * deflate goes, as by {@link Png16Writer}; horizontal differencing, which not every reader takes
+ * at 16 bits, made smooth images no smaller. The directory goes after the strips, once their
+ * offsets are known, and the header, which points to it, is written last, in the space left for
+ * it at the start: as a BigTIFF if the file has grown past what 32-bit offsets reach.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+final class TiffWriter extends BandWriter {
+
+    private static final int HEADER_SPACE = 16; // That of a BigTIFF header; a TIFF one takes 8.
+    private static final short SHORT = 3, LONG = 4, LONG8 = 16;
+    private final List<Long> stripOffsets = new ArrayList<>(), stripByteCounts = new ArrayList<>();
+    private int rowsPerStrip;
+
+    TiffWriter(Path path, Dimension size, Executor executor) throws IOException {
+        super(path, size, executor);
+        channel.position(HEADER_SPACE);
+    }
+
+    @Override
+    protected ByteBuffer[] encode(Engine.Band band) {
+        ByteBuffer raw = ByteBuffer.allocate(band.samples.length * Short.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (float sample : band.samples) {
+            raw.putShort((short) Math.clamp(Math.round(sample * 0xffff), 0, 0xffff));
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.capacity() / 2);
+        try {
+            deflater.setInput(raw.flip());
+            deflater.finish();
+            byte[] buffer = new byte[1 << 16];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        return new ByteBuffer[]{ByteBuffer.wrap(compressed.toByteArray())};
+    }
+
+    @Override
+    protected void write(Engine.Band band, ByteBuffer[] encoded) throws IOException {
+        if (band.y == 0) {
+            rowsPerStrip = band.height;
+        }
+        stripOffsets.add(channel.position());
+        stripByteCounts.add((long) encoded[0].remaining());
+        writeFully(encoded);
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        long directory = channel.position() + (channel.position() & 1); // On a word boundary.
+        int stripCount = stripOffsets.size();
+        // The directory and the arrays it points to, at most.
+        long end = directory + 2 + 10 * 12 + 4 + 3 * 2 + 2L * stripCount * 4;
+        boolean big = end > 0xffffffffL;
+        short offsetType = big ? LONG8 : LONG;
+        Object[][] entries = { // Tag, type and values, by tag.
+            {256, LONG, new long[]{size.width}},
+            {257, LONG, new long[]{size.height}},
+            {258, SHORT, new long[]{16, 16, 16}}, // Bits per sample.
+            {259, SHORT, new long[]{8}}, // Deflate.
+            {262, SHORT, new long[]{2}}, // RGB.
+            {273, offsetType, toArray(stripOffsets)},
+            {277, SHORT, new long[]{3}}, // Samples per pixel.
+            {278, LONG, new long[]{rowsPerStrip}},
+            {279, offsetType, toArray(stripByteCounts)},
+            {284, SHORT, new long[]{1}} // Samples of a pixel together.
+        };
+        int fieldSize = big ? 8 : 4;
+        int entrySize = big ? 20 : 12;
+        long arrays = directory + (big ? 8 : 2) + entries.length * entrySize + fieldSize;
+        ByteBuffer ifd = ByteBuffer.allocate((int) (arrays - directory))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+        if (big) {
+            ifd.putLong(entries.length);
+        } else {
+            ifd.putShort((short) entries.length);
+        }
+        for (Object[] entry : entries) {
+            short type = (Short) entry[1];
+            long[] data = (long[]) entry[2];
+            int typeSize = type == SHORT ? 2 : type == LONG ? 4 : 8;
+            ByteBuffer field = ByteBuffer.allocate(Math.max(data.length * typeSize, fieldSize))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (long value : data) {
+                switch (type) {
+                    case SHORT ->
+                        field.putShort((short) value);
+                    case LONG ->
+                        field.putInt((int) value);
+                    default ->
+                        field.putLong(value);
+                }
+            }
+            ifd.putShort((short) (int) (Integer) entry[0]).putShort(type);
+            if (big) {
+                ifd.putLong(data.length);
+            } else {
+                ifd.putInt(data.length);
+            }
+            if (field.capacity() == fieldSize) { // The values fit in the entry.
+                ifd.put(field.array());
+            } else {
+                long offset = arrays + values.size();
+                if (big) {
+                    ifd.putLong(offset);
+                } else {
+                    ifd.putInt((int) offset);
+                }
+                values.write(field.array(), 0, field.capacity());
+            }
+        }
+        // No next directory: the offset is left 0.
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SPACE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'I').put((byte) 'I');
+        if (big) {
+            header.putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(directory);
+        } else {
+            header.putShort((short) 42).putInt((int) directory);
+        }
+        channel.position(directory);
+        writeFully(ifd.clear(), ByteBuffer.wrap(values.toByteArray()));
+        channel.write(header.clear(), 0);
+    }
+
+    private static long[] toArray(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,188 @@
+package site.bsws.neb;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Tunes renders to the machine by timing them. A render is calibrated in trials, each sampling with
+ * one {@link Engine.Tuning} on the render's own negatives, so that no samples are wasted, and timed
+ * by the wall clock over {@link #TRIAL_TIME} once it has settled for {@link #SETTLE_TIME}:
+ * <ol>
+ * <li>with all workers at the default batch size, to size batches so that a task takes about
+ * {@link #TASK_TIME}, and to warm the algorithm up;</li>
+ * <li>with all workers at that batch size, then with half as many, and so on for as long as that
+ * is faster, since hyper-threads, CPU quotas and memory bandwidth can each make fewer workers take
+ * more samples;</li>
+ * <li>with the best number of workers, in each of the algorithm's other accumulation modes.</li>
+ * </ol>
+ * The fastest wins and is kept for the workload, i.e. the algorithm and raster size. Later
+ * calibrations of the workload start from it and only size their batches, since how long a batch
+ * takes depends on the parameters as much as on the machine.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class Tuner {
+
+    /*
+     Long enough for the tasks of the previous trial to finish, and for the JIT to catch up with
+     code the trial takes that the previous one did not, e.g. another accumulation mode.
+     */
+    static final long SETTLE_TIME = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long TRIAL_TIME = TimeUnit.MILLISECONDS.toNanos(200);
+    /*
+     Long enough that what the engine spends on a task (queueing, locking, flushing binned counts)
+     is small next to it, and short enough that pausing and cancelling stay prompt.
+     */
+    static final long TASK_TIME = TimeUnit.MILLISECONDS.toNanos(10);
+    static final int MAX_BATCH_SCALE = 1 << 12;
+    // Renders of fewer default batches are too short to calibrate.
+    static final long MIN_TASK_COUNT = 10000;
+    // A trial only beats the best so far by more than this, so that noise does not decide.
+    private static final double MARGIN = 0.05;
+    private static final Logger LOGGER = Logger.getLogger(Tuner.class.getName());
+    private final Map<String, Engine.Tuning> learned = new ConcurrentHashMap<>();
+
+    /**
+     * @return the tuning kept for the workload, for at most {@code workers} workers and one of
+     * the accumulation modes given, or null if the workload has not been calibrated yet.
+     */
+    Engine.Tuning getLearned(String workload, int workers, List<String> modes) {
+        Engine.Tuning known = learned.get(workload);
+        return known == null ? null : new Engine.Tuning(Math.min(known.workers(), workers),
+                known.batchScale(), modes.contains(known.accumulation()) ? known.accumulation()
+                : modes.get(0));
+    }
+
+    /**
+     * Starts calibrating a render of the workload, which has {@code workers} negatives to sample
+     * with, at {@code now} (in {@link System#nanoTime()}).
+     */
+    Calibration calibrate(String workload, int workers, List<String> modes, long now) {
+        return new Calibration(workload, workers, modes, now);
+    }
+
+    /**
+     * The calibration of a render, fed with the timings of its tasks.
+     */
+    class Calibration {
+
+        private final String workload;
+        private final List<String> modes;
+        private final boolean learning;
+        private Engine.Tuning trial, best; // The trial is null once calibration is over.
+        private double bestRate;
+        private boolean sizing = true, halving = true;
+        private int modeIndex; // Of the next accumulation mode to try.
+        private long trialStart, batchTotal, durationTotal;
+        private int trialTaskCount;
+
+        private Calibration(String workload, int workers, List<String> modes, long now) {
+            this.workload = workload;
+            this.modes = modes;
+            Engine.Tuning known = getLearned(workload, workers, modes);
+            learning = known == null;
+            trial = new Engine.Tuning(learning ? workers : known.workers(), 1,
+                    learning ? modes.get(0) : known.accumulation());
+            trialStart = now;
+        }
+
+        /**
+         * @return the tuning on trial, or null once calibration is over.
+         */
+        synchronized Engine.Tuning getTrial() {
+            return trial;
+        }
+
+        /**
+         * @return the best tuning, once calibration is over.
+         */
+        synchronized Engine.Tuning getBest() {
+            return best;
+        }
+
+        /**
+         * @return the rate of the best tuning, in default batches a second.
+         */
+        synchronized double getBestRate() {
+            return bestRate;
+        }
+
+        /**
+         * @return true if the calibration tries out tunings, false if it starts from a kept one.
+         */
+        boolean isLearning() {
+            return learning;
+        }
+
+        /**
+         * Records a task that completed at {@code now} after {@code duration} nanoseconds with
+         * {@code tuning}, ignored unless that is the tuning on trial and the trial has settled.
+         *
+         * @return true if this ended the trial; {@link #getTrial()} is then the next one.
+         */
+        synchronized boolean taskCompleted(Engine.Tuning tuning, long duration, long now) {
+            if (trial == null || tuning != trial || now - trialStart < SETTLE_TIME) {
+                return false;
+            }
+            trialTaskCount++;
+            batchTotal += tuning.batchScale();
+            durationTotal += duration;
+            long elapsed = now - trialStart - SETTLE_TIME;
+            if (elapsed < TRIAL_TIME || trialTaskCount < 2 * trial.workers()) {
+                return false;
+            }
+            // By the wall clock, since workers may be sharing processors.
+            double rate = batchTotal * 1e9 / elapsed;
+            LOGGER.fine(String.format("%s: %.3g default batches/s", trial, rate));
+            trial = next(rate);
+            trialStart = now;
+            trialTaskCount = 0;
+            batchTotal = durationTotal = 0;
+            return true;
+        }
+
+        /**
+         * Leaves {@code nanos} during which the workers were held back out of the trial's time.
+         */
+        synchronized void leaveOut(long nanos) {
+            trialStart += nanos;
+        }
+
+        private Engine.Tuning next(double rate) {
+            if (sizing) {
+                sizing = false;
+                Engine.Tuning sized = new Engine.Tuning(trial.workers(),
+                        Math.clamp(TASK_TIME * batchTotal / Math.max(durationTotal, 1), 1,
+                                MAX_BATCH_SCALE), trial.accumulation());
+                if (learning) {
+                    return sized;
+                }
+                best = sized;
+                bestRate = rate;
+                return null;
+            }
+            if (best == null || rate > bestRate * (1 + MARGIN)) {
+                best = trial;
+                bestRate = rate;
+            }
+            if (halving) {
+                if (trial == best && trial.workers() > 1) {
+                    return new Engine.Tuning(trial.workers() / 2, trial.batchScale(),
+                            trial.accumulation());
+                }
+                halving = false;
+            }
+            while (modeIndex < modes.size()) {
+                String mode = modes.get(modeIndex++);
+                if (!mode.equals(best.accumulation())) {
+                    return new Engine.Tuning(best.workers(), best.batchScale(), mode);
+                }
+            }
+            learned.put(workload, best);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package site.bsws.neb.alg;
+
+import site.bsws.neb.Engine;
+import java.awt.Dimension;
+import java.awt.image.DataBuffer;
+import java.util.List;
+
+/**
+ *
+ * @author Arindam Biswas <arindam dot b at ftml dot net>
+ */
+public interface Algorithm {
+    public int getNegativeMultiplier(int processorCount);
+
+    public DataBuffer createNegativeBuffer(Dimension rasterSize);
+
+    public void run(Engine.Negative negative);
+
+    public void process(Engine.Negative[] negatives, Engine.Positive positive);
+
+    @Override
+    public String toString();
+
+    /**
+     * Called once per render, before any of its tasks run.
+     *
+     * @return the number of times {@link #run(Engine.Negative)} is to be called in all, which the
+     * engine hands out to the negatives as they become free; with a
+     * {@linkplain Engine.Negative#tuning tuning}, a call counts as its batch scale.
+     */
+    public long getTaskCount(int processorCount);
+
+    /**
+     * Estimates how far the image the negatives would give is from the one infinitely many
+     * samples would, as the root mean square over pixels of each pixel's standard error, relative
+     * to full scale. Called now and then on a worker while the negatives are being sampled, so
+     * the result is approximate; the engine can stop a render once it is within a target.
+     *
+     * @return the estimate, or NaN if the algorithm cannot tell.
+     */
+    public default double estimateNoise(Engine.Negative[] negatives) {
+        return Double.NaN;
+    }
+
+    /**
+     * Called on each frame of a sequence but the first, in order and before any of them is
+     * rendered, with the frame that precedes it; algorithms may use it to carry work over between
+     * frames. The engine starts a frame only once the frame two before it has been fully sampled,
+     * though the one just before it may still be running.
+     */
+    public default void follow(Algorithm previous) {
+    }
+
+    /**
+     * Called when a render with this algorithm replaces one with {@code previous}, e.g. after a
+     * pan or zoom, with the previous render's negatives, the number of samples it took relative
+     * to its nominal count (more than 1 if it ran on a time budget), and an empty negative of this
+     * algorithm's own. Algorithms may reproject whatever of the previous samples still falls in
+     * their view into {@code negative}, scaled to stand for a complete render of their own; the
+     * engine blends it into previews, fading it out as the new samples come in, but leaves it out
+     * of the finished positive.
+     *
+     * @return false if nothing was carried over.
+     */
+    public default boolean reproject(Algorithm previous, Engine.Negative[] previousNegatives,
+            double previousProgress, Engine.Negative negative) {
+        return false;
+    }
+
+    /**
+     * @return true if {@link #merge(Engine.Negative, Engine.Negative)} is supported, which lets the
+     * engine fold finished negatives together on the workers instead of leaving all of them to
+     * {@link #process(Engine.Negative[], Engine.Positive)}.
+     */
+    public default boolean isMergeable() {
+        return false;
+    }
+
+    /**
+     * Adds the samples of {@code source} into {@code target}, such that processing the target
+     * alone gives the same image as processing both. The target's buffer may be replaced, e.g. by
+     * a wider one; the source is left as it is, since the engine also merges copies of negatives
+     * that are still being sampled, for previews.
+     */
+    public default void merge(Engine.Negative target, Engine.Negative source) {
+        throw new UnsupportedOperationException(toString() + " cannot merge negatives");
+    }
+
+    /**
+     * @return true if {@link #process(Engine.Negative[], int, Engine.TileHandler)} and
+     * {@link #develop(Engine.Negative[], int, Engine.BandHandler)} are supported, which let the
+     * engine develop images far larger than a positive can hold.
+     */
+    public default boolean isTileable() {
+        return false;
+    }
+
+    /**
+     * Processes the negatives into bands of {@code tileHeight} rows (the last may be shorter), from
+     * the top, handing each to {@code handler} before starting on the next, such that together
+     * they make the image {@link #process(Engine.Negative[], Engine.Positive)} would. Only a band
+     * at a time may be held, besides the negatives.
+     */
+    public default void process(Engine.Negative[] negatives, int tileHeight,
+            Engine.TileHandler handler) {
+        throw new UnsupportedOperationException(toString() + " cannot process tiles");
+    }
+
+    /**
+     * As {@link #process(Engine.Negative[], int, Engine.TileHandler)}, but into bands at full
+     * precision, each new, e.g. the counts of each pixel over the highest, where the positive has
+     * them to 8 bits.
+     */
+    public default void develop(Engine.Negative[] negatives, int tileHeight,
+            Engine.BandHandler handler) {
+        throw new UnsupportedOperationException(toString() + " cannot develop bands");
+    }
+
+    /**
+     * @return true if renders of this algorithm can be tuned to the machine (see
+     * {@link Engine#setAutotuning(boolean)}): that is, if they take any number of negatives, and
+     * each call of {@link #run(Engine.Negative)} follows the negative's
+     * {@linkplain Engine.Negative#tuning tuning}, which may change from one call to the next.
+     */
+    public default boolean isTunable() {
+        return false;
+    }
+
+    /**
+     * Creates a buffer for all the negatives of a render to share, which the engine falls back on
+     * when a negative each would not fit in its memory budget (see
+     * {@link Engine#setMemoryBudget(long)}). The engine marks negatives sharing a buffer with
+     * {@code "shared"} in their {@linkplain Engine.Negative#data data}, and may then run them on
+     * several workers at once, so samples must be added to it atomically; it hands only one of them
+     * to {@link #process(Engine.Negative[], Engine.Positive)}.
+     *
+     * @return the buffer, or null if negatives cannot share one.
+     */
+    public default DataBuffer createSharedNegativeBuffer(Dimension rasterSize) {
+        return null;
+    }
+
+    /**
+     * @return about how many bytes {@link #process(Engine.Negative[], Engine.Positive)} allocates
+     * at the raster size, besides the positive, e.g. for a histogram.
+     */
+    public default long estimateProcessBytes(Dimension rasterSize) {
+        return (long) rasterSize.width * rasterSize.height * Integer.BYTES;
+    }
+
+    /**
+     * Called as a render is planned; for the frames of a sequence, once they
+     * {@linkplain #follow(Algorithm) follow} one another.
+     *
+     * @return about how many bytes the algorithm keeps while sampling {@code negativeCount}
+     * negatives at the raster size, besides the negatives themselves, e.g. caches shared by all of
+     * them and working arrays kept in each one's {@linkplain Engine.Negative#data data}; it should
+     * grow with {@code negativeCount} by the same amount for each negative.
+     */
+    public default long estimateScratchBytes(Dimension rasterSize, int negativeCount) {
+        return 0;
+    }
+
+    /**
+     * @return the ways of accumulating samples into negatives a tuned render may choose between,
+     * the algorithm's own choice first.
+     */
+    public default List<String> getAccumulationModes() {
+        return List.of("direct");
+    }
+}
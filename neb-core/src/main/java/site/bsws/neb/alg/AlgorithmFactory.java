@@ -0,0 +1,33 @@
+package site.bsws.neb.alg;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Creates instances of one {@link Algorithm}. Implementations are discovered by the engine through
+ * {@link java.util.ServiceLoader}, so algorithms can live outside the core module.
+ * <p>
+ * Creating an algorithm is split in two: {@link #compile} validates string parameters into an
+ * immutable {@code P} once, and {@link #create} builds an instance from it without any parsing, so
+ * parameter sweeps can create many instances cheaply.
+ *
+ * @param <P> the algorithm's compiled parameter type.
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public interface AlgorithmFactory<P> {
+
+    /**
+     * @return the name the algorithm is selected by; the same as its {@code toString()}.
+     */
+    public String getName();
+
+    public ParameterSchema getSchema();
+
+    public P compile(Map<String, String> parameters) throws InvalidParameterException;
+
+    public Algorithm create(P parameters);
+
+    public default LinkedHashMap<String, String> getDefaultParameters() {
+        return getSchema().getDefaults();
+    }
+}
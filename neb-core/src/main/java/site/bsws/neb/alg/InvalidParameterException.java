@@ -0,0 +1,20 @@
+package site.bsws.neb.alg;
+
+/**
+ * Thrown when a parameter value does not satisfy its {@link ParameterSchema}.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public class InvalidParameterException extends Exception {
+
+    private final String parameter;
+
+    public InvalidParameterException(String parameter, String message) {
+        super(parameter + ": " + message);
+        this.parameter = parameter;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+}
@@ -0,0 +1,204 @@
+package site.bsws.neb.alg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ordered, typed set of parameters an {@link Algorithm} accepts. A schema turns the string
+ * form used by the UI and the CLI into checked {@link Values} once, before a render starts, so
+ * algorithms never parse or validate on a worker thread.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public final class ParameterSchema {
+
+    public enum Type {
+        REAL, INTEGER, CHOICE, TEXT
+    }
+
+    /**
+     * A single parameter. Numeric bounds are inclusive; {@code unit} is only used for display. A
+     * {@code developing} parameter only affects how negatives are processed into a positive, so it
+     * can be changed on a render without sampling it again.
+     */
+    public record Parameter(String name, Type type, String defaultValue, double min, double max,
+            String unit, List<String> choices, boolean developing) {
+
+        public static Parameter real(String name, double defaultValue, double min, double max,
+                String unit) {
+            return new Parameter(name, Type.REAL, Double.toString(defaultValue), min, max, unit,
+                    Collections.<String>emptyList(), false);
+        }
+
+        public static Parameter integer(String name, int defaultValue, int min, int max,
+                String unit) {
+            return new Parameter(name, Type.INTEGER, Integer.toString(defaultValue), min, max, unit,
+                    Collections.<String>emptyList(), false);
+        }
+
+        public static Parameter choice(String name, String defaultValue, String... choices) {
+            return new Parameter(name, Type.CHOICE, defaultValue, 0, 0, "",
+                    List.of(choices), false);
+        }
+
+        /**
+         * A free-form parameter, such as a formula, that the algorithm checks itself when it
+         * compiles its parameters.
+         */
+        public static Parameter text(String name, String defaultValue) {
+            return new Parameter(name, Type.TEXT, defaultValue, 0, 0, "",
+                    Collections.<String>emptyList(), false);
+        }
+
+        /**
+         * @return this parameter, marked as only affecting development.
+         */
+        public Parameter asDeveloping() {
+            return new Parameter(name, type, defaultValue, min, max, unit, choices, true);
+        }
+
+        Object parse(String value) throws InvalidParameterException {
+            value = value.trim();
+            switch (type) {
+                case REAL:
+                    double real;
+                    try {
+                        real = Double.parseDouble(value);
+                    } catch (NumberFormatException ex) {
+                        throw new InvalidParameterException(name, "'" + value + "' is not a number");
+                    }
+                    if (!(real >= min && real <= max)) { // Also rejects NaN.
+                        throw new InvalidParameterException(name, "must be in " + describeRange());
+                    }
+                    return real;
+                case INTEGER:
+                    int integer;
+                    try {
+                        integer = Integer.parseInt(value);
+                    } catch (NumberFormatException ex) {
+                        throw new InvalidParameterException(name, "'" + value
+                                + "' is not an integer");
+                    }
+                    if (integer < min || integer > max) {
+                        throw new InvalidParameterException(name, "must be in " + describeRange());
+                    }
+                    return integer;
+                case TEXT:
+                    return value;
+                default:
+                    if (!choices.contains(value)) {
+                        throw new InvalidParameterException(name, "must be one of " + choices);
+                    }
+                    return value;
+            }
+        }
+
+        private String describeRange() {
+            String range = "[" + format(min) + ", " + format(max) + "]";
+            return unit.isEmpty() ? range : range + " " + unit;
+        }
+
+        private String format(double bound) {
+            if (type == Type.INTEGER) {
+                return Long.toString((long) bound);
+            }
+            return bound == Double.MIN_VALUE ? "0 (exclusive)" : Double.toString(bound);
+        }
+    }
+
+    /**
+     * Parsed and validated parameter values, keyed by parameter name.
+     */
+    public static final class Values {
+
+        private final Map<String, Object> values;
+
+        private Values(Map<String, Object> values) {
+            this.values = values;
+        }
+
+        public double getReal(String name) {
+            return (Double) values.get(name);
+        }
+
+        public int getInteger(String name) {
+            return (Integer) values.get(name);
+        }
+
+        public String getChoice(String name) {
+            return (String) values.get(name);
+        }
+
+        public String getText(String name) {
+            return (String) values.get(name);
+        }
+    }
+
+    private final List<Parameter> parameters;
+
+    public ParameterSchema(Parameter... parameters) {
+        this.parameters = List.of(parameters);
+    }
+
+    public List<Parameter> getParameters() {
+        return parameters;
+    }
+
+    public LinkedHashMap<String, String> getDefaults() {
+        LinkedHashMap<String, String> defaults = new LinkedHashMap<>();
+        for (Parameter parameter : parameters) {
+            defaults.put(parameter.name(), parameter.defaultValue());
+        }
+        return defaults;
+    }
+
+    /**
+     * Parses and checks {@code strings} against this schema. Parameters that are absent take their
+     * default value; names the schema does not know are rejected.
+     */
+    public Values compile(Map<String, String> strings) throws InvalidParameterException {
+        for (String name : strings.keySet()) {
+            if (find(name) == null) {
+                throw new InvalidParameterException(name, "unknown parameter, expected one of "
+                        + Arrays.toString(getDefaults().keySet().toArray()));
+            }
+        }
+        LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+        for (Parameter parameter : parameters) {
+            String value = strings.get(parameter.name());
+            values.put(parameter.name(), parameter.parse(value == null ? parameter.defaultValue()
+                    : value));
+        }
+        return new Values(values);
+    }
+
+    /**
+     * Checks both sets of parameters and compares those that affect sampling.
+     *
+     * @return the name of the first parameter that is not {@code developing} and has different
+     * values in {@code from} and {@code to}, or null if there is none.
+     */
+    public String findSamplingChange(Map<String, String> from, Map<String, String> to)
+            throws InvalidParameterException {
+        Values fromValues = compile(from), toValues = compile(to);
+        for (Parameter parameter : parameters) {
+            if (!parameter.developing() && !fromValues.values.get(parameter.name())
+                    .equals(toValues.values.get(parameter.name()))) {
+                return parameter.name();
+            }
+        }
+        return null;
+    }
+
+    private Parameter find(String name) {
+        for (Parameter parameter : parameters) {
+            if (parameter.name().equals(name)) {
+                return parameter;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Algorithm;
+import java.awt.Dimension;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class BandDeveloperTest {
+
+    private static final Dimension SIZE = new Dimension(5, 7);
+
+    // Develops each pixel to a colour made of its coordinates, as an algorithm that is not
+    // tileable.
+    private static final Algorithm WHOLE = new Algorithm() {
+
+        @Override
+        public int getNegativeMultiplier(int processorCount) {
+            return 1;
+        }
+
+        @Override
+        public DataBuffer createNegativeBuffer(Dimension rasterSize) {
+            return new DataBufferInt(rasterSize.width * rasterSize.height);
+        }
+
+        @Override
+        public void run(Engine.Negative negative) {
+        }
+
+        @Override
+        public void process(Engine.Negative[] negatives, Engine.Positive positive) {
+            for (int y = 0; y < positive.getHeight(); y++) {
+                for (int x = 0; x < positive.getWidth(); x++) {
+                    positive.buffer[y * positive.getWidth() + x] = pixel(x, y);
+                }
+            }
+        }
+
+        @Override
+        public long getTaskCount(int processorCount) {
+            return 1;
+        }
+
+        @Override
+        public String toString() {
+            return "Whole";
+        }
+    };
+
+    private static int pixel(int x, int y) {
+        return 0xff000000 | 10 * x << 16 | 20 * y << 8 | 255;
+    }
+
+    private static Engine.Negative[] negatives() {
+        return new Engine.Negative[]{new Engine.Negative(WHOLE.createNegativeBuffer(SIZE), SIZE)};
+    }
+
+    @Test
+    void cutsAWholePositiveIntoTiles() {
+        List<Integer> ys = new ArrayList<>();
+        BandDeveloper.develop(WHOLE, negatives(), 3, (Engine.TileHandler) (y, tile) -> {
+            ys.add(y);
+            assertEquals(SIZE.width, tile.getWidth());
+            assertEquals(Math.min(3, SIZE.height - y), tile.getHeight());
+            for (int row = 0; row < tile.getHeight(); row++) {
+                for (int x = 0; x < SIZE.width; x++) {
+                    assertEquals(pixel(x, y + row), tile.buffer[row * SIZE.width + x]);
+                }
+            }
+        });
+        assertEquals(List.of(0, 3, 6), ys);
+    }
+
+    @Test
+    void developsAWholePositiveIntoBands() {
+        List<Engine.Band> bands = new ArrayList<>();
+        BandDeveloper.develop(WHOLE, negatives(), 4, (Engine.BandHandler) bands::add);
+        assertEquals(2, bands.size());
+        assertEquals(4, bands.get(1).y);
+        assertEquals(3, bands.get(1).height);
+        for (Engine.Band band : bands) {
+            assertEquals(SIZE.width, band.width);
+            for (int row = 0; row < band.height; row++) {
+                for (int x = 0; x < band.width; x++) {
+                    int i = row * band.width + x;
+                    assertArrayEquals(new float[]{10 * x / 255f, 20 * (band.y + row) / 255f, 1},
+                            new float[]{band.samples[3 * i], band.samples[3 * i + 1],
+                                band.samples[3 * i + 2]});
+                }
+            }
+        }
+    }
+}
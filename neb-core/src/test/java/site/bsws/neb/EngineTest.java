@@ -0,0 +1,184 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Counter;
+import java.awt.Dimension;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Renders with {@link Counter}, whose count comes out exact only if every batch was run once and
+ * every negative developed once, from a clean buffer.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class EngineTest {
+
+    private static final long TIMEOUT = 30;
+
+    private Engine engine;
+
+    private Engine start(int workerCount, Engine.Placement placement) {
+        engine = new Engine((Engine.Listener) Proxy.newProxyInstance(
+                Engine.class.getClassLoader(), new Class<?>[]{Engine.Listener.class},
+                (proxy, method, args) -> null), workerCount, Engine.WorkerType.PLATFORM,
+                placement);
+        engine.start();
+        engine.setRasterSize(new Dimension(8, 8));
+        engine.setAlgorithm("counter");
+        return engine;
+    }
+
+    @AfterEach
+    void stop() {
+        engine.resume();
+        engine.stop();
+    }
+
+    private static int count(Engine.Job job) throws Exception {
+        return Counter.getCount(job.getResult().get(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    private static void awaitProgress(Engine.Job job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (job.getProgress() == 0) {
+            assertTrue(System.nanoTime() < deadline, "No progress");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void runsEveryTaskOnce() throws Exception {
+        for (Engine.Placement placement : Engine.Placement.values()) {
+            start(3, placement);
+            for (int tasks : new int[]{1, 2, 3, 1000}) {
+                engine.setParameters(Map.of("tasks", String.valueOf(tasks)));
+                assertEquals(tasks, count(engine.render()), placement + ", " + tasks + " tasks");
+            }
+            engine.stop();
+        }
+    }
+
+    @Test
+    void cancelDropsTheRestAndRendersAgainFromScratch() throws Exception {
+        start(2, Engine.Placement.SHARED);
+        for (int i = 0; i < 5; i++) {
+            engine.setParameters(Map.of("tasks", "100000", "delay", "100"));
+            Engine.Job job = engine.render();
+            awaitProgress(job);
+            assertTrue(job.cancel());
+            assertTrue(job.isCancelled());
+            assertThrows(CancellationException.class, () -> job.getResult().get());
+            engine.setParameters(Map.of("tasks", "500"));
+            assertEquals(500, count(engine.render()));
+        }
+    }
+
+    @Test
+    void cancelRacingTheMergesLeavesEitherNoResultOrAnExactOne() throws Exception {
+        start(4, Engine.Placement.LOCAL);
+        engine.setParameters(Map.of("tasks", "40", "delay", "50"));
+        Random random = new Random(1);
+        int completed = 0;
+        for (int i = 0; i < 200; i++) {
+            Engine.Job job = engine.render();
+            // Around when the last negatives are being merged.
+            LockSupport.parkNanos(random.nextInt(1_500_000));
+            if (job.cancel()) {
+                assertThrows(CancellationException.class, () -> job.getResult().get());
+            } else {
+                assertEquals(40, count(job));
+                completed++;
+            }
+        }
+        assertTrue(completed < 200, "Never cancelled in time");
+        engine.setParameters(Map.of("tasks", "1000"));
+        assertEquals(1000, count(engine.render()));
+    }
+
+    @Test
+    void givesNegativesBackOnceHoweverRendersEnd() throws Exception {
+        start(3, Engine.Placement.SHARED);
+        AtomicBoolean previewing = new AtomicBoolean(true);
+        Thread previews = Thread.ofPlatform().start(() -> {
+            while (previewing.get()) {
+                engine.getPositive();
+                LockSupport.parkNanos(200_000);
+            }
+        });
+        List<Integer> wrongCounts = new CopyOnWriteArrayList<>();
+        Random random = new Random(2);
+        try {
+            for (int i = 0; i < 30; i++) {
+                // A sequence gives frames back as they are superseded, and its replacement the
+                // rest, possibly the same ones.
+                Engine.Job sequence = engine.render(
+                        Collections.nCopies(4, Map.of("tasks", "300", "delay", "20")),
+                        (frame, positive) -> {
+                            if (Counter.getCount(positive) != 300) {
+                                wrongCounts.add(Counter.getCount(positive));
+                            }
+                        });
+                LockSupport.parkNanos(random.nextInt(20_000_000));
+                sequence.cancel();
+                engine.setParameters(Map.of("tasks", "200", "delay", "20"));
+                Engine.Job job = engine.render();
+                LockSupport.parkNanos(random.nextInt(5_000_000));
+                job.cancel();
+            }
+        } finally {
+            previewing.set(false);
+            previews.join();
+        }
+        engine.setParameters(Map.of("tasks", "1000"));
+        assertEquals(1000, count(engine.render()));
+        assertEquals(List.of(), wrongCounts);
+    }
+
+    @Test
+    void pauseHoldsTheRenderUntilResumed() throws Exception {
+        start(2, Engine.Placement.SHARED);
+        engine.setParameters(Map.of("tasks", "2000", "delay", "100"));
+        Engine.Job job = engine.render();
+        awaitProgress(job);
+        engine.pause();
+        assertTrue(engine.isPaused());
+        double progress = job.getProgress();
+        Thread.sleep(200);
+        assertEquals(progress, job.getProgress());
+        assertFalse(job.getResult().isDone());
+        engine.resume();
+        assertEquals(2000, count(job));
+    }
+
+    @Test
+    void pauseDuringCalibrationHoldsTheTrialsToo() throws Exception {
+        start(2, Engine.Placement.SHARED);
+        engine.setAutotuning(true);
+        int tasks = (int) Tuner.MIN_TASK_COUNT * 2;
+        engine.setParameters(Map.of("tasks", String.valueOf(tasks), "delay", "20"));
+        for (int i = 0; i < 3; i++) {
+            Engine.Job job = engine.render();
+            awaitProgress(job); // Well within the first trial's settling.
+            engine.pause();
+            double progress = job.getProgress();
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(Tuner.SETTLE_TIME + Tuner.TRIAL_TIME));
+            assertEquals(progress, job.getProgress());
+            engine.resume();
+            assertEquals(tasks, count(job));
+        }
+    }
+}
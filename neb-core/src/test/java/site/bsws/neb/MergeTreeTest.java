@@ -0,0 +1,98 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Counter;
+import java.awt.Dimension;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class MergeTreeTest {
+
+    private static Engine.Negative[] negatives(int count) {
+        Engine.Negative[] negatives = new Engine.Negative[count];
+        for (int i = 0; i < count; i++) {
+            negatives[i] = new Engine.Negative(new DataBufferInt(new int[]{i + 1}, 1),
+                    new Dimension(1, 1));
+        }
+        return negatives;
+    }
+
+    private static int count(Engine.Negative negative) {
+        return ((DataBufferInt) negative.buffer).getData()[0];
+    }
+
+    @Test
+    void returnsASoleNegativeAsItIs() {
+        Engine.Negative[] negatives = negatives(1);
+        assertSame(negatives[0], new MergeTree(new Counter(1, 0), 1).add(negatives[0]));
+    }
+
+    @Test
+    void foldsNegativesAddedOneByOne() {
+        Engine.Negative[] negatives = negatives(5);
+        MergeTree tree = new MergeTree(new Counter(1, 0), negatives.length);
+        for (int i = 0; i < negatives.length - 1; i++) {
+            assertNull(tree.add(negatives[i]));
+        }
+        Engine.Negative merged = tree.add(negatives[4]);
+        assertNotNull(merged);
+        assertEquals(15, count(merged));
+        for (Engine.Negative negative : negatives) {
+            if (negative != merged) {
+                assertNull(negative.buffer);
+            }
+        }
+    }
+
+    @Test
+    void foldsNegativesAddedAtOnceIntoOne() throws Exception {
+        int threadCount = 8, count = 64;
+        for (int round = 0; round < 200; round++) {
+            Engine.Negative[] negatives = negatives(count);
+            MergeTree tree = new MergeTree(new Counter(1, 0), count);
+            AtomicReferenceArray<Engine.Negative> results = new AtomicReferenceArray<>(count);
+            CyclicBarrier barrier = new CyclicBarrier(threadCount);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                int first = t;
+                threads.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        barrier.await();
+                    } catch (Exception ex) {
+                        throw new AssertionError(ex);
+                    }
+                    for (int i = first; i < count; i += threadCount) {
+                        results.set(i, tree.add(negatives[i]));
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Engine.Negative merged = null;
+            int live = 0;
+            for (int i = 0; i < count; i++) {
+                if (results.get(i) != null) {
+                    assertNull(merged, "Merged twice");
+                    merged = results.get(i);
+                }
+                if (negatives[i].buffer != null) {
+                    live++;
+                }
+            }
+            assertNotNull(merged);
+            assertEquals(1, live);
+            assertEquals(count * (count + 1) / 2, count(merged));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package site.bsws.neb;
+
+import java.awt.Dimension;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class NegativePoolTest {
+
+    private static final Dimension SIZE = new Dimension(4, 3);
+
+    private static Engine.Negative negative(DataBuffer buffer) {
+        Engine.Negative negative = new Engine.Negative(buffer, SIZE);
+        negative.data = new HashMap<>();
+        return negative;
+    }
+
+    @Test
+    void takesBackTheBufferAndDataGiven() {
+        NegativePool pool = new NegativePool();
+        Engine.Negative given = negative(new DataBufferInt(12));
+        DataBuffer buffer = given.buffer;
+        HashMap<String, Object> data = given.data;
+        given.buffer.setElem(5, 7);
+        pool.reserve(NegativePool.Shape.of(given), 2);
+        pool.give(given);
+        assertNull(given.buffer);
+
+        Engine.Negative taken = pool.take(NegativePool.Shape.of(negative(buffer)), true);
+        assertSame(buffer, taken.buffer);
+        assertSame(data, taken.data);
+        assertSame(SIZE, taken.size);
+        assertArrayEquals(new int[12], ((DataBufferInt) taken.buffer).getData());
+    }
+
+    @Test
+    void keepsTheContentsUnlessCleared() {
+        NegativePool pool = new NegativePool();
+        Engine.Negative given = negative(new DataBufferUShort(12));
+        NegativePool.Shape shape = NegativePool.Shape.of(given);
+        given.buffer.setElem(3, 9);
+        pool.reserve(shape, 1);
+        pool.give(given);
+        assertEquals(9, pool.take(shape, false).buffer.getElem(3));
+    }
+
+    @Test
+    void givingTwiceKeepsTheBufferOnce() {
+        NegativePool pool = new NegativePool();
+        Engine.Negative given = negative(new DataBufferInt(12));
+        NegativePool.Shape shape = NegativePool.Shape.of(given);
+        pool.reserve(shape, 4);
+        pool.give(given);
+        pool.give(given);
+        assertNotNull(pool.take(shape, true));
+        assertNull(pool.take(shape, true));
+    }
+
+    @Test
+    void givingTwiceAtOnceKeepsTheBufferOnce() throws Exception {
+        int count = 16, threadCount = 4;
+        for (int round = 0; round < 200; round++) {
+            NegativePool pool = new NegativePool();
+            Engine.Negative[] given = new Engine.Negative[count];
+            for (int i = 0; i < count; i++) {
+                given[i] = negative(new DataBufferInt(12));
+            }
+            NegativePool.Shape shape = NegativePool.Shape.of(given[0]);
+            pool.reserve(shape, 2 * count);
+            CyclicBarrier barrier = new CyclicBarrier(threadCount);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                threads.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        barrier.await();
+                    } catch (Exception ex) {
+                        throw new AssertionError(ex);
+                    }
+                    for (Engine.Negative negative : given) {
+                        pool.give(negative);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Set<DataBuffer> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Engine.Negative negative; (negative = pool.take(shape, false)) != null; ) {
+                assertTrue(taken.add(negative.buffer), "Kept twice");
+            }
+            assertEquals(count, taken.size());
+        }
+    }
+
+    @Test
+    void dropsOtherShapesAndWhatItHasNoRoomFor() {
+        NegativePool pool = new NegativePool();
+        NegativePool.Shape shape = NegativePool.Shape.of(negative(new DataBufferInt(12)));
+        pool.reserve(shape, 1);
+        pool.give(negative(new DataBufferUShort(12)));
+        assertNull(pool.take(shape, true));
+
+        Engine.Negative kept = negative(new DataBufferInt(12));
+        DataBuffer buffer = kept.buffer;
+        pool.give(kept);
+        pool.give(negative(new DataBufferInt(12)));
+        assertSame(buffer, pool.take(shape, true).buffer);
+        assertNull(pool.take(shape, true));
+    }
+
+    @Test
+    void lettingGoOfAShapeEmptiesThePool() {
+        NegativePool pool = new NegativePool();
+        NegativePool.Shape shape = NegativePool.Shape.of(negative(new DataBufferInt(12)));
+        pool.reserve(shape, 2);
+        pool.give(negative(new DataBufferInt(12)));
+        pool.reserve(NegativePool.Shape.of(negative(new DataBufferUShort(12))), 2);
+        pool.reserve(shape, 2);
+        assertNull(pool.take(shape, true));
+    }
+}
@@ -0,0 +1,55 @@
+package site.bsws.neb;
+
+import site.bsws.neb.alg.Counter;
+import java.awt.Dimension;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class PreviewCopiesTest {
+
+    private static final Dimension SIZE = new Dimension(3, 2);
+
+    private static Engine.Negative negative(int count) {
+        int[] counts = new int[SIZE.width * SIZE.height];
+        counts[0] = count;
+        return new Engine.Negative(new DataBufferInt(counts, counts.length), SIZE);
+    }
+
+    @Test
+    void copiesANegativeOfTheSameKindAndReusesTheCopy() {
+        PreviewCopies copies = new PreviewCopies();
+        Engine.Negative negative = new Engine.Negative(new DataBufferUShort(6), SIZE);
+        negative.buffer.setElem(5, 0xfffe);
+        Engine.Negative[] copied = copies.copy(new Counter(1, 0), new Engine.Negative[]{negative});
+        assertEquals(1, copied.length);
+        assertNotSame(negative.buffer, copied[0].buffer);
+        assertInstanceOf(DataBufferUShort.class, copied[0].buffer);
+        assertEquals(0xfffe, copied[0].buffer.getElem(5));
+
+        Object buffer = copied[0].buffer;
+        copies.give(copied);
+        negative.buffer.setElem(5, 3);
+        copied = copies.copy(new Counter(1, 0), new Engine.Negative[]{negative});
+        assertSame(buffer, copied[0].buffer);
+        assertEquals(3, copied[0].buffer.getElem(5));
+    }
+
+    @Test
+    void mergesNegativesIntoOneCopy() {
+        Engine.Negative[] negatives = {negative(1), negative(2), negative(4)};
+        Engine.Negative[] copied = new PreviewCopies().copy(new Counter(1, 0), negatives);
+        assertEquals(1, copied.length);
+        assertEquals(7, copied[0].buffer.getElem(0));
+        for (int i = 0; i < negatives.length; i++) { // Left alone.
+            assertEquals(1 << i, negatives[i].buffer.getElem(0));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package site.bsws.neb;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class SchedulerTest {
+
+    private static final long TIMEOUT = 10;
+
+    private static class Job extends Scheduler.Task {
+
+        final String name;
+        final int priority;
+        final Runnable body;
+        volatile boolean cancelled;
+        volatile Throwable failure;
+
+        Job(String name, int priority, Runnable body) {
+            this.name = name;
+            this.priority = priority;
+            this.body = body;
+        }
+
+        @Override
+        int getPriority() {
+            return priority;
+        }
+
+        @Override
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        void run() {
+            body.run();
+        }
+
+        @Override
+        void failed(Throwable cause) {
+            failure = cause;
+        }
+    }
+
+    private Scheduler<Job> scheduler;
+
+    private Scheduler<Job> start(int workerCount, boolean local) {
+        scheduler = new Scheduler<>(workerCount, local, Thread.ofPlatform().daemon(true)
+                .factory());
+        scheduler.start();
+        return scheduler;
+    }
+
+    @AfterEach
+    void stop() {
+        scheduler.resume();
+        scheduler.stop();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+        } catch (InterruptedException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    @Test
+    void runsHigherPrioritiesFirstThenInOrder() {
+        start(1, false);
+        CountDownLatch held = new CountDownLatch(1), release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        scheduler.enqueue(new Job("hold", 0, () -> {
+            held.countDown();
+            await(release);
+        }));
+        await(held); // So that the rest queue up behind it.
+        String[] names = {"a", "b", "c", "d"};
+        int[] priorities = {0, 1, 0, 1};
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            scheduler.enqueue(new Job(name, priorities[i], () -> {
+                ran.add(name);
+                done.countDown();
+            }));
+        }
+        release.countDown();
+        await(done);
+        assertEquals(List.of("b", "d", "a", "c"), ran);
+    }
+
+    @Test
+    void pauseWaitsForTheTasksInHand() throws Exception {
+        start(2, false);
+        CountDownLatch running = new CountDownLatch(2), release = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        for (int i = 0; i < 2; i++) {
+            scheduler.enqueue(new Job("slow", 0, () -> {
+                running.countDown();
+                await(release);
+                finished.set(true);
+            }));
+        }
+        await(running);
+        Thread pausing = Thread.ofPlatform().start(scheduler::pause);
+        pausing.join(200);
+        assertTrue(pausing.isAlive(), "Paused while tasks were running");
+        release.countDown();
+        pausing.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+        assertFalse(pausing.isAlive());
+        assertTrue(finished.get());
+        assertTrue(scheduler.isPaused());
+
+        // Held back until resumed.
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.enqueue(new Job("later", 0, ran::countDown));
+        assertFalse(ran.await(200, TimeUnit.MILLISECONDS));
+        scheduler.resume();
+        await(ran);
+    }
+
+    @Test
+    void pauseFromAWorkerDoesNotWaitForItself() {
+        start(2, true);
+        CountDownLatch paused = new CountDownLatch(1);
+        Job job = new Job("pausing", 0, () -> {
+            scheduler.pause();
+            paused.countDown();
+        });
+        job.home = 1;
+        scheduler.enqueue(job);
+        await(paused);
+        assertTrue(scheduler.isPaused());
+    }
+
+    @Test
+    void dropsTasksCancelledOrRemovedBeforeTheyAreTaken() {
+        start(2, true);
+        CountDownLatch held = new CountDownLatch(2), release = new CountDownLatch(1);
+        for (int home = 0; home < 2; home++) { // So that what follows stays queued.
+            Job hold = new Job("hold", 0, () -> {
+                held.countDown();
+                await(release);
+            });
+            hold.home = home;
+            scheduler.enqueue(hold);
+        }
+        await(held);
+        AtomicBoolean ran = new AtomicBoolean();
+        Job cancelled = new Job("cancelled", 0, () -> ran.set(true));
+        Job removed = new Job("removed", 0, () -> ran.set(true));
+        removed.home = 1;
+        scheduler.enqueue(cancelled);
+        scheduler.enqueue(removed);
+        cancelled.cancelled = true;
+        scheduler.removeIf(job -> job == removed);
+        CountDownLatch done = new CountDownLatch(2);
+        for (int home = 0; home < 2; home++) {
+            Job last = new Job("last", 0, done::countDown);
+            last.home = home;
+            scheduler.enqueue(last);
+        }
+        release.countDown();
+        await(done);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void reportsFailuresAndCarriesOn() {
+        start(1, false);
+        RuntimeException failure = new IllegalStateException();
+        Job failing = new Job("failing", 0, () -> {
+            throw failure;
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        scheduler.enqueue(failing);
+        scheduler.enqueue(new Job("next", 0, () -> {
+            worker.set(Thread.currentThread());
+            done.countDown();
+        }));
+        await(done);
+        assertSame(failure, failing.failure);
+        assertTrue(worker.get().isAlive());
+    }
+
+    @Test
+    void reportsErrorsAndKeepsTheWorker() {
+        start(1, false);
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        Error error = new OutOfMemoryError("Java heap space");
+        Job failing = new Job("failing", 0, () -> {
+            worker.set(Thread.currentThread());
+            throw error;
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Thread> next = new AtomicReference<>();
+        scheduler.enqueue(failing);
+        scheduler.enqueue(new Job("next", 0, () -> {
+            next.set(Thread.currentThread());
+            done.countDown();
+        }));
+        await(done);
+        assertSame(error, failing.failure);
+        assertSame(worker.get(), next.get());
+        scheduler.pause(); // Would wait forever if the failed task still counted as running.
+        assertTrue(scheduler.isPaused());
+    }
+}
@@ -0,0 +1,77 @@
+package site.bsws.neb;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Calibrates on a made-up clock, with one worker taking a millisecond a default batch.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class TunerTest {
+
+    private static final long BATCH_TIME = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long PAUSE = TimeUnit.SECONDS.toNanos(5);
+
+    // Runs tasks of the trial until it ends, and returns the time then.
+    private static long runTrial(Tuner.Calibration calibration, long now) {
+        Engine.Tuning trial = calibration.getTrial();
+        long duration = trial.batchScale() * BATCH_TIME;
+        do {
+            now += duration;
+        } while (!calibration.taskCompleted(trial, duration, now));
+        return now;
+    }
+
+    @Test
+    void sizesBatchesAndMeasuresTheRate() {
+        Tuner.Calibration calibration = new Tuner().calibrate("a", 1, List.of("direct"), 0);
+        long now = runTrial(calibration, 0);
+        assertEquals(new Engine.Tuning(1, (int) (Tuner.TASK_TIME / BATCH_TIME), "direct"),
+                calibration.getTrial());
+        runTrial(calibration, now);
+        assertNull(calibration.getTrial());
+        assertEquals(1000, calibration.getBestRate(), 100);
+    }
+
+    @Test
+    void leavesOutTheTimePaused() {
+        Tuner.Calibration calibration = new Tuner().calibrate("a", 1, List.of("direct"), 0);
+        long now = runTrial(calibration, 0);
+        Engine.Tuning trial = calibration.getTrial();
+        long duration = trial.batchScale() * BATCH_TIME;
+        // Part way into the trial, the workers are held back, then resumed.
+        for (int i = 0; i < 20; i++) {
+            now += duration;
+            calibration.taskCompleted(trial, duration, now);
+        }
+        now += PAUSE;
+        calibration.leaveOut(PAUSE);
+        runTrial(calibration, now);
+        assertNull(calibration.getTrial());
+        assertEquals(1000, calibration.getBestRate(), 100);
+    }
+
+    @Test
+    void endsTrialsHeldBackEveryFewTasks() {
+        // As previews do, a millisecond every three tasks.
+        Tuner.Calibration calibration = new Tuner().calibrate("a", 1, List.of("direct"), 0);
+        long now = 0;
+        for (int task = 1; calibration.getTrial() != null; task++) {
+            assertTrue(task < 1000, "Never ended");
+            Engine.Tuning trial = calibration.getTrial();
+            long duration = trial.batchScale() * BATCH_TIME;
+            now += duration;
+            calibration.taskCompleted(trial, duration, now);
+            if (task % 3 == 0) {
+                now += BATCH_TIME;
+                calibration.leaveOut(BATCH_TIME);
+            }
+        }
+        assertEquals(1000, calibration.getBestRate(), 100);
+    }
+}
@@ -0,0 +1,116 @@
+package site.bsws.neb.alg;
+
+import site.bsws.neb.Engine;
+import site.bsws.neb.alg.ParameterSchema.Parameter;
+import java.awt.Dimension;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Counts the default batches run into the first element of its negatives, and develops their sum
+ * into the first pixel of the positive, so that a render that completes has a count of exactly its
+ * task count, whatever the workers, tuning, merging or reuse of negatives along the way.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+public class Counter implements Algorithm {
+
+    public static class Factory implements AlgorithmFactory<ParameterSchema.Values> {
+
+        @Override
+        public String getName() {
+            return "counter";
+        }
+
+        @Override
+        public ParameterSchema getSchema() {
+            return SCHEMA;
+        }
+
+        @Override
+        public ParameterSchema.Values compile(Map<String, String> parameters)
+                throws InvalidParameterException {
+            return SCHEMA.compile(parameters);
+        }
+
+        @Override
+        public Algorithm create(ParameterSchema.Values parameters) {
+            return new Counter(parameters.getInteger("tasks"), parameters.getInteger("delay"));
+        }
+    }
+
+    public static final ParameterSchema SCHEMA = new ParameterSchema(
+            Parameter.integer("tasks", 1000, 1, Integer.MAX_VALUE, "tasks"),
+            Parameter.integer("delay", 0, 0, Integer.MAX_VALUE, "us"));
+    private final int taskCount;
+    private final long delay;
+
+    public Counter(int taskCount, int delay) {
+        this.taskCount = taskCount;
+        this.delay = TimeUnit.MICROSECONDS.toNanos(delay);
+    }
+
+    /**
+     * @return the count developed into {@code positive}.
+     */
+    public static int getCount(Engine.Positive positive) {
+        return positive.buffer[0];
+    }
+
+    @Override
+    public int getNegativeMultiplier(int processorCount) {
+        return 1;
+    }
+
+    @Override
+    public DataBuffer createNegativeBuffer(Dimension rasterSize) {
+        return new DataBufferInt(rasterSize.width * rasterSize.height);
+    }
+
+    @Override
+    public void run(Engine.Negative negative) {
+        int batches = negative.tuning == null ? 1 : negative.tuning.batchScale();
+        if (delay > 0) {
+            LockSupport.parkNanos(delay * batches);
+        }
+        ((DataBufferInt) negative.buffer).getData()[0] += batches;
+    }
+
+    @Override
+    public void process(Engine.Negative[] negatives, Engine.Positive positive) {
+        int count = 0;
+        for (Engine.Negative negative : negatives) {
+            count += ((DataBufferInt) negative.buffer).getData()[0];
+        }
+        positive.buffer[0] = count;
+    }
+
+    @Override
+    public long getTaskCount(int processorCount) {
+        return taskCount;
+    }
+
+    @Override
+    public boolean isMergeable() {
+        return true;
+    }
+
+    @Override
+    public void merge(Engine.Negative target, Engine.Negative source) {
+        ((DataBufferInt) target.buffer).getData()[0]
+                += ((DataBufferInt) source.buffer).getData()[0];
+    }
+
+    @Override
+    public boolean isTunable() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Counter";
+    }
+}
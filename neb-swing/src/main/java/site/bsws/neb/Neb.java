@@ -1,19 +1,37 @@
 package site.bsws.neb;
 
+import site.bsws.neb.alg.InvalidParameterException;
+import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import javax.swing.GroupLayout;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 
 /**
  *
  * @author Arindam Biswas <arindam at bsws dot site>
  */
 public class Neb extends JPanel implements Engine.Listener {
+    private static final String UNUSED_PARAMETER = "--";
     private final Engine engine;
     private int renderedNegativeCount;
 
@@ -25,6 +43,7 @@ public class Neb extends JPanel implements Engine.Listener {
         engine = new Engine(this);
         engine.setAlgorithm((String) algorithmList.getSelectedItem());
         engine.start();
+        canvas.setViewListener(this::viewChanged);
     }
 
     /**
@@ -309,24 +328,44 @@ public class Neb extends JPanel implements Engine.Listener {
     }//GEN-LAST:event_resetButtonActionPerformed
 
     private void applyButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyButtonActionPerformed
-        LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
-        parameters.put(parameter1Label.getText(), parameter1Value.getText());
-        parameters.put(parameter2Label.getText(), parameter2Value.getText());
-        parameters.put(parameter3Label.getText(), parameter3Value.getText());
-        parameters.put(parameter4Label.getText(), parameter4Value.getText());
-        parameters.put(parameter5Label.getText(), parameter5Value.getText());
-        parameters.put(parameter6Label.getText(), parameter6Value.getText());
-        parameters.put(parameter7Label.getText(), parameter7Value.getText());
-        parameters.put(parameter8Label.getText(), parameter8Value.getText());
-        parameters.put(parameter9Label.getText(), parameter9Value.getText());
-        parameters.put(parameter10Label.getText(), parameter10Value.getText());
-        engine.setParameters(parameters);
+        LinkedHashMap<String, String> parameters = getShownParameters();
+        if (engine.canDevelop(parameters)) { // Only developing parameters changed.
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        canvas.setImage(engine.develop(parameters));
+                    } catch (InvalidParameterException ex) {
+                        log(ex.getMessage());
+                    }
+                }
+            }.start();
+            return;
+        }
+        try {
+            engine.setParameters(parameters);
+        } catch (InvalidParameterException ex) {
+            log(ex.getMessage());
+            statusLabel.setText("Invalid parameter: " + ex.getParameter() + ".");
+        }
     }//GEN-LAST:event_applyButtonActionPerformed
 
     private void renderButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_renderButtonActionPerformed
-        engine.render();
+        render();
     }//GEN-LAST:event_renderButtonActionPerformed
 
+    // Starts a render, unless it would not fit in the engine's memory budget.
+    private boolean render() {
+        try {
+            engine.render();
+            return true;
+        } catch (IllegalStateException ex) {
+            log(ex.getMessage());
+            statusLabel.setText("Not enough memory to render.");
+            return false;
+        }
+    }
+
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel algorithmLabel;
@@ -396,43 +435,20 @@ public class Neb extends JPanel implements Engine.Listener {
     }
 
     @Override
-    public void errorOccurred() {
+    public void renderingCancelled() {
+        progressBar.setIndeterminate(false);
+        statusLabel.setText("Rendering cancelled.");
+    }
 
+    @Override
+    public void errorOccurred() {
+        progressBar.setIndeterminate(false);
+        statusLabel.setText("Rendering failed.");
     }
 
     @Override
     public void algorithmSet(LinkedHashMap<String, String> newParameters) {
-        Iterator i = newParameters.entrySet().iterator();
-        Map.Entry p = (Map.Entry) i.next();
-        parameter1Label.setText((String) p.getKey());
-        parameter1Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter2Label.setText((String) p.getKey());
-        parameter2Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter3Label.setText((String) p.getKey());
-        parameter3Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter4Label.setText((String) p.getKey());
-        parameter4Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter5Label.setText((String) p.getKey());
-        parameter5Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter6Label.setText((String) p.getKey());
-        parameter6Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter7Label.setText((String) p.getKey());
-        parameter7Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter8Label.setText((String) p.getKey());
-        parameter8Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter9Label.setText((String) p.getKey());
-        parameter9Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter10Label.setText((String) p.getKey());
-        parameter10Value.setText((String) p.getValue());
+        showParameters(newParameters);
         statusLabel.setText("Algorithm set.");
     }
 
@@ -443,40 +459,87 @@ public class Neb extends JPanel implements Engine.Listener {
 
     @Override
     public void parametersReset(LinkedHashMap<String, String> newParameters) {
-        Iterator i = newParameters.entrySet().iterator();
-        Map.Entry p = (Map.Entry) i.next();
-        parameter1Label.setText((String) p.getKey());
-        parameter1Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter2Label.setText((String) p.getKey());
-        parameter2Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter3Label.setText((String) p.getKey());
-        parameter3Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter4Label.setText((String) p.getKey());
-        parameter4Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter5Label.setText((String) p.getKey());
-        parameter5Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter6Label.setText((String) p.getKey());
-        parameter6Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter7Label.setText((String) p.getKey());
-        parameter7Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter8Label.setText((String) p.getKey());
-        parameter8Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter9Label.setText((String) p.getKey());
-        parameter9Value.setText((String) p.getValue());
-        p = (Map.Entry) i.next();
-        parameter10Label.setText((String) p.getKey());
-        parameter10Value.setText((String) p.getValue());
+        showParameters(newParameters);
         statusLabel.setText("Parameters reset.");
     }
 
+    private JLabel[] getParameterLabels() {
+        return new JLabel[]{parameter1Label, parameter2Label, parameter3Label, parameter4Label,
+            parameter5Label, parameter6Label, parameter7Label, parameter8Label, parameter9Label,
+            parameter10Label};
+    }
+
+    private JTextField[] getParameterValues() {
+        return new JTextField[]{parameter1Value, parameter2Value, parameter3Value, parameter4Value,
+            parameter5Value, parameter6Value, parameter7Value, parameter8Value, parameter9Value,
+            parameter10Value};
+    }
+
+    private LinkedHashMap<String, String> getShownParameters() {
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+        JLabel[] labels = getParameterLabels();
+        JTextField[] values = getParameterValues();
+        for (int i = 0; i < labels.length; i++) {
+            if (!labels[i].getText().equals(UNUSED_PARAMETER)) {
+                parameters.put(labels[i].getText(), values[i].getText());
+            }
+        }
+        return parameters;
+    }
+
+    /*
+     Reframes the view after a pan or zoom on the canvas and renders it straight away; the engine
+     carries over what it can of the current render, so the first preview is shown at once. The
+     positive's top row is the top of the view, i.e. at min_y + range_y.
+     */
+    private void viewChanged(double left, double top, double size) {
+        LinkedHashMap<String, String> parameters = getShownParameters();
+        if (!parameters.keySet().containsAll(List.of("min_x", "min_y", "range_x", "range_y"))) {
+            return;
+        }
+        try {
+            double minX = Double.parseDouble(parameters.get("min_x"));
+            double minY = Double.parseDouble(parameters.get("min_y"));
+            double rangeX = Double.parseDouble(parameters.get("range_x"));
+            double rangeY = Double.parseDouble(parameters.get("range_y"));
+            parameters.put("min_x", Double.toString(minX + left * rangeX));
+            parameters.put("min_y", Double.toString(minY + (1 - top - size) * rangeY));
+            parameters.put("range_x", Double.toString(rangeX * size));
+            parameters.put("range_y", Double.toString(rangeY * size));
+            engine.setParameters(parameters);
+        } catch (NumberFormatException | InvalidParameterException ex) {
+            log(ex.getMessage());
+            statusLabel.setText("Cannot reframe the current parameters.");
+            return;
+        }
+        showParameters(parameters);
+        if (!render()) {
+            return;
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                canvas.setImage(engine.getPositive());
+            }
+        }.start();
+    }
+
+    private void showParameters(LinkedHashMap<String, String> parameters) {
+        JLabel[] labels = getParameterLabels();
+        JTextField[] values = getParameterValues();
+        Iterator<Map.Entry<String, String>> i = parameters.entrySet().iterator();
+        for (int j = 0; j < labels.length; j++) {
+            if (i.hasNext()) {
+                Map.Entry<String, String> p = i.next();
+                labels[j].setText(p.getKey());
+                values[j].setText(p.getValue());
+            } else {
+                labels[j].setText(UNUSED_PARAMETER);
+                values[j].setText(UNUSED_PARAMETER);
+            }
+        }
+    }
+
     @Override
     public void log(String message) {
         logArea.append(message + "\n");
@@ -498,7 +561,32 @@ public class Neb extends JPanel implements Engine.Listener {
 
     public static class Canvas extends JPanel {
 
-        private BufferedImage image;
+        /**
+         * Told when the user pans (by dragging) or zooms (with the wheel, about the pointer).
+         */
+        public static interface ViewListener {
+
+            /**
+             * Called on the event dispatch thread with the new view, in fractions of the current
+             * image: its left and top edges and its width and height.
+             */
+            public void viewChanged(double left, double top, double size);
+        }
+
+        private static final double ZOOM_STEP = 1.25; // Per notch of the wheel.
+        /*
+         Positives are unmanaged images, which Java2D cannot cache on the graphics card, so drawing
+         one directly costs a software blit (and scaling) on every repaint. Instead, each update is
+         scaled to fit once into an opaque 'frame', which is then uploaded once into a volatile
+         image that repaints blit from. Without a screen (headless, or not yet displayable) the
+         frame itself is drawn, so that path is the same everywhere.
+         */
+        private BufferedImage image, frame;
+        private VolatileImage accelerated;
+        private boolean uploaded; // Whether #accelerated holds the current frame.
+        private ViewListener viewListener;
+        private Point dragStart;
+        private int dragX, dragY; // Offset of the image while it is dragged, and until replaced.
 
         /**
          * Creates new form Panel
@@ -506,17 +594,147 @@ public class Neb extends JPanel implements Engine.Listener {
         public Canvas() {
             super();
             initComponents();
+            MouseAdapter gestures = new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    dragStart = e.getPoint();
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    if (dragStart != null) {
+                        dragX = e.getX() - dragStart.x;
+                        dragY = e.getY() - dragStart.y;
+                        repaint();
+                    }
+                }
+
+                @Override
+                public void mouseReleased(MouseEvent e) {
+                    BufferedImage shown = frame;
+                    dragStart = null;
+                    if (shown != null && viewListener != null && (dragX != 0 || dragY != 0)) {
+                        viewListener.viewChanged(-dragX / (double) shown.getWidth(),
+                                -dragY / (double) shown.getHeight(), 1);
+                    }
+                }
+
+                @Override
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    BufferedImage shown = frame;
+                    if (shown == null || viewListener == null || dragStart != null) {
+                        return;
+                    }
+                    double size = Math.pow(ZOOM_STEP, e.getPreciseWheelRotation());
+                    double x = e.getX() / (double) shown.getWidth();
+                    double y = e.getY() / (double) shown.getHeight();
+                    viewListener.viewChanged(x - x * size, y - y * size, size);
+                }
+            };
+            addMouseListener(gestures);
+            addMouseMotionListener(gestures);
+            addMouseWheelListener(gestures);
+            addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent e) {
+                    update();
+                }
+            });
+        }
+
+        public void setViewListener(ViewListener viewListener) {
+            this.viewListener = viewListener;
         }
 
+        /**
+         * Shows the image, or its latest contents if it is the one already shown. May be called
+         * from any thread.
+         */
         public void setImage(BufferedImage image) {
-            this.image = image;
+            EventQueue.invokeLater(() -> {
+                this.image = image;
+                if (dragStart == null) {
+                    dragX = dragY = 0;
+                }
+                update();
+            });
+        }
+
+        /**
+         * @return the image scaled to fit within the given size, keeping its aspect ratio, as an
+         * opaque image that Java2D can cache; {@code reuse} is drawn into instead if it is of that
+         * size.
+         */
+        public static BufferedImage fit(BufferedImage image, int width, int height,
+                BufferedImage reuse) {
+            double scale = Math.min(width / (double) image.getWidth(),
+                    height / (double) image.getHeight());
+            int w = Math.max((int) Math.round(image.getWidth() * scale), 1);
+            int h = Math.max((int) Math.round(image.getHeight() * scale), 1);
+            BufferedImage fitted = reuse != null && reuse.getWidth() == w
+                    && reuse.getHeight() == h ? reuse : new BufferedImage(w, h,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = fitted.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setComposite(AlphaComposite.Src);
+                g.setColor(Color.BLACK);
+                g.fillRect(0, 0, w, h);
+                g.setComposite(AlphaComposite.SrcOver);
+                g.drawImage(image, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            return fitted;
+        }
+
+        private void update() {
+            if (image != null && getWidth() > 0 && getHeight() > 0) {
+                frame = fit(image, getWidth(), getHeight(), frame);
+                uploaded = false;
+            }
             repaint();
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            super.paintComponents(g);
-            g.drawImage(image, 0, 0, null);
+            super.paintComponent(g);
+            if (frame == null) {
+                return;
+            }
+            GraphicsConfiguration configuration = getGraphicsConfiguration();
+            if (configuration == null) {
+                g.drawImage(frame, dragX, dragY, null);
+                return;
+            }
+            while (true) {
+                int state = accelerated == null ? VolatileImage.IMAGE_INCOMPATIBLE
+                        : accelerated.validate(configuration);
+                if (state == VolatileImage.IMAGE_INCOMPATIBLE
+                        || accelerated.getWidth() != frame.getWidth()
+                        || accelerated.getHeight() != frame.getHeight()) {
+                    if (accelerated != null) {
+                        accelerated.flush();
+                    }
+                    accelerated = configuration.createCompatibleVolatileImage(frame.getWidth(),
+                            frame.getHeight());
+                    uploaded = false;
+                } else if (state == VolatileImage.IMAGE_RESTORED) {
+                    uploaded = false;
+                }
+                if (!uploaded) {
+                    Graphics2D upload = accelerated.createGraphics();
+                    upload.drawImage(frame, 0, 0, null);
+                    upload.dispose();
+                    uploaded = true;
+                }
+                g.drawImage(accelerated, dragX, dragY, null);
+                if (!accelerated.contentsLost()) {
+                    break;
+                }
+                uploaded = false;
+            }
         }
 
         /**
@@ -0,0 +1,92 @@
+package site.bsws.neb;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs headless, as the build does.
+ *
+ * @author Arindam Biswas <arindam at bsws dot site>
+ */
+class CanvasTest {
+
+    private static final int RED = 0xff0000, BLUE = 0x0000ff;
+
+    // Left half red, right half blue.
+    private static BufferedImage halves(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(RED));
+        g.fillRect(0, 0, width / 2, height);
+        g.setColor(new Color(BLUE));
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+        return image;
+    }
+
+    private static int rgb(BufferedImage image, int x, int y) {
+        return image.getRGB(x, y) & 0xffffff;
+    }
+
+    @Test
+    void scalesToFitKeepingTheAspectRatio() {
+        BufferedImage fitted = Neb.Canvas.fit(halves(400, 200), 100, 100, null);
+        assertEquals(100, fitted.getWidth());
+        assertEquals(50, fitted.getHeight());
+        assertEquals(RED, rgb(fitted, 10, 25));
+        assertEquals(BLUE, rgb(fitted, 90, 25));
+
+        fitted = Neb.Canvas.fit(halves(50, 100), 300, 300, null);
+        assertEquals(150, fitted.getWidth());
+        assertEquals(300, fitted.getHeight());
+
+        fitted = Neb.Canvas.fit(halves(1000, 10), 100, 100, null);
+        assertEquals(100, fitted.getWidth());
+        assertEquals(1, fitted.getHeight());
+    }
+
+    @Test
+    void fitsIntoAnOpaqueImage() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0x80ffffff);
+        BufferedImage fitted = Neb.Canvas.fit(image, 10, 10, null);
+        assertEquals(BufferedImage.TYPE_INT_RGB, fitted.getType());
+        assertEquals(0, rgb(fitted, 9, 9)); // Transparent over black.
+        assertTrue(rgb(fitted, 0, 0) > 0 && rgb(fitted, 0, 0) < 0xffffff);
+    }
+
+    @Test
+    void reusesAnImageOfTheSize() {
+        BufferedImage reuse = Neb.Canvas.fit(halves(400, 200), 100, 100, null);
+        reuse.setRGB(50, 25, 0x00ff00);
+        BufferedImage fitted = Neb.Canvas.fit(halves(200, 100), 120, 50, reuse);
+        assertSame(reuse, fitted);
+        assertEquals(BLUE, rgb(fitted, 50, 25)); // Drawn over in full.
+        assertNotSame(reuse, Neb.Canvas.fit(halves(100, 100), 100, 100, reuse));
+    }
+
+    @Test
+    void letterboxesTheImageInTheCanvas() throws Exception {
+        Neb.Canvas canvas = new Neb.Canvas();
+        canvas.setBackground(Color.GREEN);
+        canvas.setSize(300, 100);
+        canvas.setImage(halves(100, 100));
+        BufferedImage painted = new BufferedImage(300, 100, BufferedImage.TYPE_INT_RGB);
+        EventQueue.invokeAndWait(() -> {
+            Graphics2D g = painted.createGraphics();
+            canvas.paint(g);
+            g.dispose();
+        });
+        assertEquals(RED, rgb(painted, 10, 50));
+        assertEquals(BLUE, rgb(painted, 90, 50));
+        assertEquals(Color.GREEN.getRGB() & 0xffffff, rgb(painted, 150, 50));
+        assertEquals(Color.GREEN.getRGB() & 0xffffff, rgb(painted, 290, 50));
+    }
+}